@@ -0,0 +1,132 @@
+package org.lambda.framework.benchmark.redis;
+
+import org.lambda.framework.common.util.sample.JsonUtil;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 进程内的redis替身
+ * 只实现认证、授权热路径用到的命令,value与hash value按与AbstractReactiveRedisRepositoryConfig相同的json序列化器读写,
+ * 反序列化的开销与真实redis一致,不包含网络往返。其余命令会落到未初始化的连接工厂上直接报错
+ * 登陆脚本只执行其中的HSET,不做会话淘汰
+ **/
+@SuppressWarnings("unchecked")
+public class InMemoryRedisOperation extends ReactiveRedisOperation {
+
+    private static final Jackson2JsonRedisSerializer<Object> SERIALIZER = new Jackson2JsonRedisSerializer<>(JsonUtil.getJsonFactory(), Object.class);
+
+    private final Map<Object, byte[]> values = new ConcurrentHashMap<>();
+
+    private final Map<Object, Map<Object, byte[]>> hashes = new ConcurrentHashMap<>();
+
+    public InMemoryRedisOperation() {
+        super(new LettuceConnectionFactory(), context());
+    }
+
+    private static RedisSerializationContext<String, Object> context() {
+        RedisSerializationContext.SerializationPair<String> stringSerializationPair = RedisSerializationContext.SerializationPair.fromSerializer(StringRedisSerializer.UTF_8);
+        RedisSerializationContext.SerializationPair<Object> valueSerializationPair = RedisSerializationContext.SerializationPair.fromSerializer(SERIALIZER);
+        return RedisSerializationContext.<String, Object>newSerializationContext()
+                .key(stringSerializationPair)
+                .value(valueSerializationPair)
+                .hashKey(stringSerializationPair)
+                .hashValue(valueSerializationPair)
+                .string(stringSerializationPair)
+                .build();
+    }
+
+    @Override
+    public <K, V> Mono<Boolean> set(K k, V t, Long timeout) {
+        return set(k, t);
+    }
+
+    @Override
+    public <K, V> Mono<Boolean> set(K k, V t) {
+        return Mono.fromSupplier(() -> {
+            values.put(k, SERIALIZER.serialize(t));
+            return true;
+        });
+    }
+
+    @Override
+    public <K, V> Mono<V> get(K k) {
+        return Mono.fromSupplier(() -> {
+            byte[] value = values.get(k);
+            return value == null ? null : (V) SERIALIZER.deserialize(value);
+        });
+    }
+
+    @Override
+    public <K> Mono<Long> delete(K k) {
+        return Mono.fromSupplier(() -> (values.remove(k) != null ? 1L : 0L) + (hashes.remove(k) != null ? 1L : 0L));
+    }
+
+    @Override
+    public <K> Mono<Boolean> expire(K k, Long timeout) {
+        return existKey(k);
+    }
+
+    @Override
+    public <K> Mono<Boolean> existKey(K k) {
+        return Mono.fromSupplier(() -> values.containsKey(k) || hashes.containsKey(k));
+    }
+
+    @Override
+    public <K, T> Flux<T> script(RedisScript<T> script, List<K> keys, List<String> args) {
+        //登陆脚本: KEYS[1] 会话hash ARGV[1] token ARGV[2] 已按json序列化的会话
+        return Flux.defer(() -> {
+            hashes.computeIfAbsent(keys.get(0), e -> new ConcurrentHashMap<>()).put(args.get(0), args.get(1).getBytes(StandardCharsets.UTF_8));
+            return Flux.just((T) Long.valueOf(1));
+        });
+    }
+
+    @Override
+    public <K, HK, HV> Mono<Boolean> hashSet(K k, HK hk, HV hv) {
+        return Mono.fromSupplier(() -> hashes.computeIfAbsent(k, e -> new ConcurrentHashMap<>()).put(hk, SERIALIZER.serialize(hv)) == null);
+    }
+
+    @Override
+    public <K, HK, HV> Mono<HV> hashGet(K k, HK hk) {
+        return Mono.fromSupplier(() -> {
+            Map<Object, byte[]> hash = hashes.get(k);
+            byte[] value = hash == null ? null : hash.get(hk);
+            return value == null ? null : (HV) SERIALIZER.deserialize(value);
+        });
+    }
+
+    @Override
+    public <K, HK, HV> Flux<Map.Entry<HK, HV>> hashEntries(K k) {
+        return Flux.defer(() -> {
+            Map<Object, byte[]> hash = hashes.get(k);
+            if (hash == null) return Flux.empty();
+            return Flux.fromIterable(hash.entrySet())
+                    .map(e -> new AbstractMap.SimpleImmutableEntry<>((HK) e.getKey(), (HV) SERIALIZER.deserialize(e.getValue())));
+        });
+    }
+
+    @Override
+    public <K, HK> Mono<Long> hashDelete(K k, Collection<HK> hks) {
+        return Mono.fromSupplier(() -> {
+            Map<Object, byte[]> hash = hashes.get(k);
+            if (hash == null) return 0L;
+            long removed = 0;
+            for (HK hk : hks) {
+                if (hash.remove(hk) != null) removed++;
+            }
+            return removed;
+        });
+    }
+}
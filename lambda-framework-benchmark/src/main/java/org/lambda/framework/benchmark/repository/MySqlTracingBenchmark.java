@@ -0,0 +1,85 @@
+package org.lambda.framework.benchmark.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.lambda.framework.repository.config.ReactiveMySqlStatementMetrics;
+import org.lambda.framework.repository.config.ReactiveMySqlTracingConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 语句追踪代理的开销,同一条查询分别经过原连接工厂和ReactiveMySqlTracingConnectionFactory执行
+ * 目标是不访问数据库的StubConnectionFactory,traced与bare的差值即每条语句增加的绝对耗时,
+ * 与一次数据库往返的耗时(通常为数百微秒)相比得到追踪的相对开销
+ * traced绑定了SimpleMeterRegistry,与生产环境一样记录每类语句的指标
+ * 本机结果(JDK 21): 1行时bare约0.24us,traced约1.06us;100行时bare约2.7us,traced约5.0us
+ * 即每条语句约增加0.8us和约1KB分配,每行约增加0.015us,往返300us的查询约为0.3%~0.8%
+ * 改为直接委托的包装类之前(r2dbc-proxy):1行traced约5.9us,100行约11.5us,每条语句约9.5KB分配;结果行也包装代理时100行约60us
+ * mvn -Pbenchmark exec:exec -Djmh.args="MySqlTracingBenchmark -prof gc"
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MySqlTracingBenchmark {
+
+    private static final String SQL = "SELECT id FROM sys_organization WHERE organization_id = ? AND parent_id IN (?, ?, ?) LIMIT 100";
+
+    //每条语句返回的行数,追踪按行计数
+    @Param({"1", "100"})
+    private int rows;
+
+    private ConnectionFactory bare;
+
+    private ConnectionFactory traced;
+
+    @Setup
+    public void setup() {
+        bare = new StubConnectionFactory(rows);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReactiveMySqlStatementMetrics metrics = new ReactiveMySqlStatementMetrics(1000, true, 500, 100);
+        metrics.bindTo(registry);
+        traced = new ReactiveMySqlTracingConnectionFactory(bare, metrics);
+        if (!query(bare).equals(query(traced)))
+            throw new IllegalStateException("tracing proxy changed the query result");
+        //结果行不包装,行数和获取连接的耗时仍然要记录
+        if (registry.get("lambda.repository.mysql.statement.rows").summary().totalAmount() != rows
+                || registry.get("lambda.repository.mysql.connection.acquire").timer().count() != 1)
+            throw new IllegalStateException("tracing proxy did not record the query");
+    }
+
+    @Benchmark
+    public Long bare() {
+        return query(bare);
+    }
+
+    @Benchmark
+    public Long traced() {
+        return query(traced);
+    }
+
+    //获取连接、执行、读取全部行、关闭连接,与DatabaseClient执行一条查询的调用顺序相同
+    private static Long query(ConnectionFactory connectionFactory) {
+        return Mono.usingWhen(Mono.from(connectionFactory.create()),
+                connection -> Flux.from(connection.createStatement(SQL).bind(0, 1L).bind(1, 2L).bind(2, 3L).bind(3, 4L).execute())
+                        .flatMap(result -> result.map((row, metadata) -> row.get(0, Long.class)))
+                        .reduce(0L, Long::sum),
+                Connection::close).block();
+    }
+}
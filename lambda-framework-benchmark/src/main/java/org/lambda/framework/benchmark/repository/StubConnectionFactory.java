@@ -0,0 +1,220 @@
+package org.lambda.framework.benchmark.repository;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ConnectionMetadata;
+import io.r2dbc.spi.IsolationLevel;
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.TransactionDefinition;
+import io.r2dbc.spi.ValidationDepth;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * @description: 不连接数据库的连接工厂,每条语句同步返回固定行数的单列结果
+ * 没有网络和驱动的开销,基准测出的差值就是代理本身的开销
+ **/
+public class StubConnectionFactory implements ConnectionFactory {
+
+    private static final ConnectionFactoryMetadata METADATA = () -> "stub";
+
+    private final int rows;
+
+    public StubConnectionFactory(int rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public Publisher<? extends Connection> create() {
+        return Mono.just(new StubConnection());
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return METADATA;
+    }
+
+    private class StubConnection implements Connection {
+
+        @Override
+        public Statement createStatement(String sql) {
+            return new StubStatement();
+        }
+
+        @Override
+        public Publisher<Void> close() {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> beginTransaction() {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> beginTransaction(TransactionDefinition definition) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> commitTransaction() {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> rollbackTransaction() {
+            return Mono.empty();
+        }
+
+        @Override
+        public Batch createBatch() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Publisher<Void> createSavepoint(String name) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> releaseSavepoint(String name) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> rollbackTransactionToSavepoint(String name) {
+            return Mono.empty();
+        }
+
+        @Override
+        public boolean isAutoCommit() {
+            return true;
+        }
+
+        @Override
+        public ConnectionMetadata getMetadata() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IsolationLevel getTransactionIsolationLevel() {
+            return IsolationLevel.REPEATABLE_READ;
+        }
+
+        @Override
+        public Publisher<Void> setAutoCommit(boolean autoCommit) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> setLockWaitTimeout(Duration timeout) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> setStatementTimeout(Duration timeout) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Void> setTransactionIsolationLevel(IsolationLevel isolationLevel) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Publisher<Boolean> validate(ValidationDepth depth) {
+            return Mono.just(true);
+        }
+    }
+
+    private class StubStatement implements Statement {
+
+        @Override
+        public Statement add() {
+            return this;
+        }
+
+        @Override
+        public Statement bind(int index, Object value) {
+            return this;
+        }
+
+        @Override
+        public Statement bind(String name, Object value) {
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(int index, Class<?> type) {
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(String name, Class<?> type) {
+            return this;
+        }
+
+        @Override
+        public Publisher<? extends Result> execute() {
+            return Mono.just(new StubResult());
+        }
+    }
+
+    private class StubResult implements Result {
+
+        @Override
+        public Publisher<Long> getRowsUpdated() {
+            return Mono.just(0L);
+        }
+
+        @Override
+        public <T> Publisher<T> map(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+            return Flux.range(0, rows).map(i -> mappingFunction.apply(new StubRow(i), null));
+        }
+
+        @Override
+        public <T> Publisher<T> map(Function<? super Readable, ? extends T> mappingFunction) {
+            return Flux.range(0, rows).map(i -> mappingFunction.apply(new StubRow(i)));
+        }
+
+        @Override
+        public Result filter(Predicate<Segment> filter) {
+            return this;
+        }
+
+        @Override
+        public <T> Publisher<T> flatMap(Function<Segment, ? extends Publisher<? extends T>> mappingFunction) {
+            return Flux.empty();
+        }
+    }
+
+    private record StubRow(long id) implements Row {
+
+        @Override
+        public RowMetadata getMetadata() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T get(int index, Class<T> type) {
+            return type.cast(id);
+        }
+
+        @Override
+        public <T> T get(String name, Class<T> type) {
+            return type.cast(id);
+        }
+    }
+}
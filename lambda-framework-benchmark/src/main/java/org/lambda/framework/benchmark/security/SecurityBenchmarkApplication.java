@@ -0,0 +1,59 @@
+package org.lambda.framework.benchmark.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.lambda.framework.benchmark.redis.InMemoryRedisOperation;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.lambda.framework.security.config.SecurityAuthRedisRepositoryConfig;
+import org.lambda.framework.security.config.SecurityAutzRedisRepositoryConfig;
+import org.lambda.framework.security.container.SecurityLoginUser;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisReactiveAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisRepositoriesAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * @description: 安全模块基准测试使用的应用
+ * 与业务应用一样扫描security、web模块,两个redis操作替换为进程内的替身,请求经过完整的WebFilter链
+ **/
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = {RedisAutoConfiguration.class, RedisReactiveAutoConfiguration.class, RedisRepositoriesAutoConfiguration.class})
+@ComponentScan(basePackages = {"org.lambda.framework.security", "org.lambda.framework.web"},
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = {SecurityAuthRedisRepositoryConfig.class, SecurityAutzRedisRepositoryConfig.class}))
+@RestController
+public class SecurityBenchmarkApplication {
+
+    public static final String SECURE_PATH = "/benchmark/secure";
+
+    public static final String PERMIT_PATH = "/benchmark/permit";
+
+    @Bean("securityAuthRedisOperation")
+    public ReactiveRedisOperation securityAuthRedisOperation() {
+        return new InMemoryRedisOperation();
+    }
+
+    @Bean("securityAutzRedisOperation")
+    public ReactiveRedisOperation securityAutzRedisOperation() {
+        return new InMemoryRedisOperation();
+    }
+
+    @GetMapping({SECURE_PATH, PERMIT_PATH})
+    public Mono<String> ping() {
+        return Mono.just("pong");
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class BenchmarkUser implements SecurityLoginUser {
+        private Long id;
+        private Long organizationId;
+        private String name;
+    }
+}
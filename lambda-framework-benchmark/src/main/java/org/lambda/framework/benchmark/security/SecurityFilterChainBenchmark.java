@@ -0,0 +1,116 @@
+package org.lambda.framework.benchmark.security;
+
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.lambda.framework.security.SecurityPrincipalUtil;
+import org.lambda.framework.security.contract.SecurityContract;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.lambda.framework.benchmark.security.SecurityBenchmarkApplication.PERMIT_PATH;
+import static org.lambda.framework.benchmark.security.SecurityBenchmarkApplication.SECURE_PATH;
+
+/**
+ * @description: 安全过滤链的吞吐量与延迟分位
+ * 请求通过WebTestClient绑定应用上下文在进程内发出,经过限流、permit-urls匹配、SecurityAutzManager、SecurityAuthManager的完整链路,redis为进程内替身
+ * permit: 命中permit-urls的请求 warmToken: 每次使用同一个令牌 coldToken: 在sessions个令牌中轮换,每个令牌在一轮中只使用一次
+ * Throughput给出吞吐量,SampleTime给出p50/p90/p99/p99.9延迟,并发客户端数由-t指定,-prof gc给出每次请求的分配量
+ * mvn -Pbenchmark exec:exec -Djmh.args="SecurityFilterChainBenchmark -t 32 -prof gc"
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class SecurityFilterChainBenchmark {
+
+    @Param({"100000"})
+    private int sessions;
+
+    private ConfigurableApplicationContext context;
+
+    private WebTestClient client;
+
+    private String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(SecurityBenchmarkApplication.class)
+                .web(WebApplicationType.REACTIVE)
+                .properties("server.port=0", "lambda.security.permit-urls=" + PERMIT_PATH, "logging.level.root=WARN")
+                .run();
+        client = WebTestClient.bindToApplicationContext(context).configureClient().build();
+        //默认的授权模式要求路径存在权限树
+        context.getBean("securityAutzRedisOperation", ReactiveRedisOperation.class).set(SECURE_PATH, "benchmark").block();
+        SecurityPrincipalUtil securityPrincipalUtil = context.getBean(SecurityPrincipalUtil.class);
+        tokens = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            tokens[i] = securityPrincipalUtil.setPrincipal(new SecurityBenchmarkApplication.BenchmarkUser((long) i + 1, 1L, "user" + i)).block();
+        }
+        //三条路径都必须认证、授权成功,否则测到的是异常路径
+        exchange(PERMIT_PATH, null);
+        exchange(SECURE_PATH, tokens[0]);
+        exchange(SECURE_PATH, tokens[sessions - 1]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) context.close();
+    }
+
+    //每个线程从不同的位置开始轮换令牌
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            index = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public byte[] permit() {
+        return exchange(PERMIT_PATH, null);
+    }
+
+    @Benchmark
+    public byte[] warmToken() {
+        return exchange(SECURE_PATH, tokens[0]);
+    }
+
+    @Benchmark
+    public byte[] coldToken(Cursor cursor) {
+        return exchange(SECURE_PATH, tokens[(cursor.index++ & Integer.MAX_VALUE) % sessions]);
+    }
+
+    private byte[] exchange(String path, String token) {
+        WebTestClient.RequestHeadersSpec<?> request = client.get().uri(path);
+        if (token != null) request = request.header(SecurityContract.AUTH_TOKEN_NAMING, token);
+        return request.exchange()
+                .expectStatus().isOk()
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
@@ -0,0 +1,83 @@
+package org.lambda.framework.benchmark.security;
+
+import org.lambda.framework.security.matcher.SecurityPermitUrlMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: permit-urls前缀树与spring逐个PathPattern匹配(pathMatchers)的对比
+ * 放行路径混合普通段、{var}、*、末尾的 /**,hit命中最后加入的放行路径,miss不命中任何放行路径,即需要认证的普通请求
+ * mvn -Pbenchmark exec:exec -Djmh.args="SecurityPermitUrlMatcherBenchmark -prof gc"
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityPermitUrlMatcherBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int patterns;
+
+    @Param({"hit", "miss"})
+    private String request;
+
+    private ServerWebExchangeMatcher trie;
+
+    private ServerWebExchangeMatcher linear;
+
+    private ServerWebExchange exchange;
+
+    @Setup
+    public void setup() {
+        String[] permitUrls = new String[patterns];
+        for (int i = 0; i < patterns; i++) {
+            permitUrls[i] = switch (i % 4) {
+                case 0 -> "/api/module" + i + "/public/**";
+                case 1 -> "/api/module" + i + "/items/{id}";
+                case 2 -> "/api/module" + i + "/*/detail";
+                default -> "/open/module" + i + "/login";
+            };
+        }
+        trie = new SecurityPermitUrlMatcher(permitUrls);
+        linear = ServerWebExchangeMatchers.pathMatchers(permitUrls);
+        int last = patterns - 1;
+        String path = "miss".equals(request) ? "/api/module" + last + "/orders/1024/items" : switch (last % 4) {
+            case 0 -> "/api/module" + last + "/public/css/app.css";
+            case 1 -> "/api/module" + last + "/items/1024";
+            case 2 -> "/api/module" + last + "/1024/detail";
+            default -> "/open/module" + last + "/login";
+        };
+        exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        boolean matched = trie();
+        if (matched != linear() || matched != "hit".equals(request))
+            throw new IllegalStateException("permit url matchers disagree on " + path);
+    }
+
+    @Benchmark
+    public boolean trie() {
+        return trie.matches(exchange).block().isMatch();
+    }
+
+    @Benchmark
+    public boolean linear() {
+        return linear.matches(exchange).block().isMatch();
+    }
+}
@@ -0,0 +1,57 @@
+package org.lambda.framework.benchmark.tree;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.lambda.framework.compliance.repository.po.IFlattenTreePO;
+import org.lambda.framework.compliance.repository.po.IMaterializedPathPO;
+import org.lambda.framework.compliance.repository.po.UnifyVersionPO;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.List;
+
+/**
+ * @description: 机构树基准使用的节点,带版本号和物化路径,覆盖树服务写操作的全部分支
+ **/
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Table("benchmark_tree_node")
+public class BenchmarkTreeNodePO extends UnifyVersionPO implements IMaterializedPathPO {
+
+    public static final String DDL = "CREATE TABLE benchmark_tree_node ("
+            + "id BIGINT AUTO_INCREMENT PRIMARY KEY, parent_id BIGINT, organization_id BIGINT, name VARCHAR(64), "
+            + "path VARCHAR(1024), depth INT, version BIGINT, "
+            + "create_time TIMESTAMP, update_time TIMESTAMP, creator_id BIGINT, updater_id BIGINT, creator_name VARCHAR(64), updater_name VARCHAR(64))";
+
+    public static final String INDEX = "CREATE INDEX benchmark_tree_node_path ON benchmark_tree_node (organization_id, path)";
+
+    @Id
+    private Long id;
+
+    private Long parentId;
+
+    private Long organizationId;
+
+    private String name;
+
+    private String path;
+
+    private Integer depth;
+
+    @Transient
+    @EqualsAndHashCode.Exclude
+    private List<BenchmarkTreeNodePO> childrens;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <PO extends IFlattenTreePO> List<PO> getChildrens() {
+        return (List<PO>) childrens;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <PO extends IFlattenTreePO> void setChildrens(List<PO> childrens) {
+        this.childrens = (List<BenchmarkTreeNodePO>) childrens;
+    }
+}
@@ -0,0 +1,6 @@
+package org.lambda.framework.benchmark.tree;
+
+import org.lambda.framework.repository.operation.mysql.ReactiveMySqlCrudRepositoryOperation;
+
+public interface BenchmarkTreeNodeRepository extends ReactiveMySqlCrudRepositoryOperation<BenchmarkTreeNodePO, Long> {
+}
@@ -0,0 +1,20 @@
+package org.lambda.framework.benchmark.tree;
+
+import org.lambda.framework.compliance.service.impl.DefaultTreeServiceImpl;
+
+import java.util.List;
+
+/**
+ * @description: 机构树基准使用的树服务,与业务中的树服务一样继承DefaultTreeServiceImpl
+ **/
+public class BenchmarkTreeService extends DefaultTreeServiceImpl<BenchmarkTreeNodePO, Long, BenchmarkTreeNodeRepository> {
+
+    public BenchmarkTreeService(BenchmarkTreeNodeRepository repository) {
+        super(repository);
+    }
+
+    //findTree中不含查询的组装部分
+    public List<BenchmarkTreeNodePO> assemble(List<BenchmarkTreeNodePO> nodes, Long parentId) {
+        return process(nodes, parentId);
+    }
+}
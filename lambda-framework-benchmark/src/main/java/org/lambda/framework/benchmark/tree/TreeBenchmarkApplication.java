@@ -0,0 +1,159 @@
+package org.lambda.framework.benchmark.tree;
+
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.h2.H2ConnectionOption;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
+import io.r2dbc.spi.ConnectionFactory;
+import org.lambda.framework.benchmark.redis.InMemoryRedisOperation;
+import org.lambda.framework.compliance.repository.po.IMaterializedPathPO;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.lambda.framework.repository.operation.mysql.ReactiveMySqlBatchOperation;
+import org.lambda.framework.security.SecurityPrincipalUtil;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lambda.framework.compliance.enums.ComplianceConstant.ROOT_NODE_DEFAULT;
+
+/**
+ * @description: 机构树基准使用的应用
+ * 树服务与业务中一样由spring注入,数据库为MySQL兼容模式的H2内存库,登陆用户取不到时树服务按访客处理
+ * 连接经过r2dbc-proxy,统计提交和回滚的事务数,回滚即乐观锁冲突后的重试
+ **/
+@Configuration
+@EnableR2dbcRepositories(basePackageClasses = BenchmarkTreeNodeRepository.class)
+public class TreeBenchmarkApplication extends AbstractR2dbcConfiguration {
+
+    private final AtomicLong commits = new AtomicLong();
+
+    private final AtomicLong rollbacks = new AtomicLong();
+
+    public static AnnotationConfigApplicationContext start() {
+        return new AnnotationConfigApplicationContext(TreeBenchmarkApplication.class);
+    }
+
+    @Override
+    @Bean
+    public ConnectionFactory connectionFactory() {
+        H2ConnectionFactory h2 = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .inMemory("tree-" + UUID.randomUUID())
+                .property(H2ConnectionOption.DB_CLOSE_DELAY, "-1")
+                .property(H2ConnectionOption.MODE, "MySQL")
+                .property("LOCK_TIMEOUT", "10000")
+                .build());
+        return ProxyConnectionFactory.builder(h2).listener(new ProxyMethodExecutionListener() {
+            @Override
+            public void afterCommitTransactionOnConnection(MethodExecutionInfo executionInfo) {
+                commits.incrementAndGet();
+            }
+
+            @Override
+            public void afterRollbackTransactionOnConnection(MethodExecutionInfo executionInfo) {
+                rollbacks.incrementAndGet();
+            }
+        }).build();
+    }
+
+    @Bean
+    public BenchmarkTreeService benchmarkTreeService(BenchmarkTreeNodeRepository repository) {
+        return new BenchmarkTreeService(repository);
+    }
+
+    @Bean
+    public SecurityPrincipalUtil securityPrincipalUtil() {
+        return new SecurityPrincipalUtil();
+    }
+
+    @Bean("securityAuthRedisOperation")
+    public ReactiveRedisOperation securityAuthRedisOperation() {
+        return new InMemoryRedisOperation();
+    }
+
+    public long commits() {
+        return commits.get();
+    }
+
+    public long rollbacks() {
+        return rollbacks.get();
+    }
+
+    //随机树,父节点先于子节点出现,路径和层级与父子关系一致
+    public static List<BenchmarkTreeNodePO> nodes(Long organizationId, int size, long seed) {
+        Random random = new Random(seed);
+        List<BenchmarkTreeNodePO> nodes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BenchmarkTreeNodePO node = new BenchmarkTreeNodePO();
+            node.setId((long) i + 1);
+            node.setOrganizationId(organizationId);
+            node.setName("n" + i);
+            BenchmarkTreeNodePO parent = i == 0 ? null : nodes.get(random.nextInt(i));
+            node.setParentId(parent == null ? ROOT_NODE_DEFAULT : parent.getId());
+            node.setPath((parent == null ? "/" : parent.getPath()) + node.getId() + "/");
+            node.setDepth(parent == null ? 0 : parent.getDepth() + 1);
+            node.setVersion(0L);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    public static void createTable(DatabaseClient client) {
+        client.sql(BenchmarkTreeNodePO.DDL).then().then(client.sql(BenchmarkTreeNodePO.INDEX).then()).block();
+    }
+
+    //主键已生成,按多行INSERT批量写入
+    public static void insert(R2dbcEntityTemplate template, List<BenchmarkTreeNodePO> nodes) {
+        ReactiveMySqlBatchOperation.insert(template, BenchmarkTreeNodePO.class, Flux.fromIterable(nodes), 500).then().block();
+    }
+
+    //一个根节点,其余节点的父节点都存在,从任一节点沿父节点都能到达根节点,路径和层级与父子关系一致
+    //返回发现的问题,为空表示树完整
+    public static List<String> verify(List<BenchmarkTreeNodePO> nodes) {
+        List<String> problems = new ArrayList<>();
+        Map<Long, BenchmarkTreeNodePO> index = new HashMap<>();
+        for (BenchmarkTreeNodePO node : nodes) index.put(node.getId(), node);
+        long roots = nodes.stream().filter(e -> ROOT_NODE_DEFAULT.equals(e.getParentId())).count();
+        if (roots != 1) problems.add(roots + " roots");
+        for (BenchmarkTreeNodePO node : nodes) {
+            StringBuilder path = new StringBuilder();
+            Set<Long> visited = new HashSet<>();
+            BenchmarkTreeNodePO current = node;
+            int depth = -1;
+            while (current != null) {
+                if (!visited.add(current.getId())) {
+                    problems.add("cycle at " + node.getId());
+                    break;
+                }
+                path.insert(0, "/" + current.getId());
+                depth++;
+                if (ROOT_NODE_DEFAULT.equals(current.getParentId())) break;
+                BenchmarkTreeNodePO parent = index.get(current.getParentId());
+                if (parent == null) problems.add("node " + current.getId() + " has missing parent " + current.getParentId());
+                current = parent;
+            }
+            IMaterializedPathPO materialized = node;
+            if (!Objects.equals(path + "/", materialized.getPath()) || !Objects.equals(depth, materialized.getDepth())) {
+                problems.add("node " + node.getId() + " path " + materialized.getPath() + " depth " + materialized.getDepth() + " expected " + path + "/ " + depth);
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,80 @@
+package org.lambda.framework.benchmark.tree;
+
+import org.lambda.framework.common.util.tree.LegacyTreeFactory;
+import org.lambda.framework.common.util.tree.TreeFactory;
+import org.lambda.framework.common.util.tree.TreeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 索引建树与改造前递归建树的对比
+ * 输入为父节点先于子节点出现的随机树,改造前的实现只能正确处理这种顺序
+ * mvn -Pbenchmark exec:exec -Djmh.args="TreeFactoryBenchmark -prof gc"
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeFactoryBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int nodes;
+
+    private List<TreeNode> treeNodes;
+
+    private TreeFactory indexed;
+
+    private LegacyTreeFactory legacy;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(nodes);
+        treeNodes = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            TreeNode node = new TreeNode();
+            node.setNodeId("n" + i);
+            node.setParentId(i == 0 || random.nextInt(10) == 0 ? "root" : treeNodes.get(random.nextInt(i)).getNodeId());
+            treeNodes.add(node);
+        }
+        indexed = new TreeFactory().createTree(treeNodes);
+        legacy = new LegacyTreeFactory().createTree(treeNodes);
+        if (!indexed.iteratorTree(indexed.getRoot()).equals(legacy.iteratorTree(legacy.getRoot())))
+            throw new IllegalStateException("TreeFactory output differs from the legacy implementation");
+    }
+
+    @Benchmark
+    public TreeFactory createTree() {
+        return new TreeFactory().createTree(treeNodes);
+    }
+
+    @Benchmark
+    public LegacyTreeFactory createTreeLegacy() {
+        return new LegacyTreeFactory().createTree(treeNodes);
+    }
+
+    @Benchmark
+    public String iteratorTree() {
+        return indexed.iteratorTree(indexed.getRoot());
+    }
+
+    @Benchmark
+    public String iteratorTreeLegacy() {
+        return legacy.iteratorTree(legacy.getRoot());
+    }
+}
@@ -0,0 +1,133 @@
+package org.lambda.framework.benchmark.tree;
+
+import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.compliance.service.dto.MoveNodeDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_019;
+
+/**
+ * @description: 同一机构上并发移动节点
+ * 每次调用由callers个调用方同时对同一机构执行moveNode,当前节点和目标节点随机选取,根节点不移动
+ * 节点带版本号,读取之后被其他移动修改过的节点在事务中校验版本号失败,整个事务回滚后重新读取并重试
+ * 每轮测量结束后读取整个机构校验:只有一个根节点,没有环,父节点都存在,物化路径和层级与父子关系一致
+ * 除重试耗尽(ES_COMPLIANCE_019)以外的任何失败、树的任何不一致都会使基准直接失败
+ * 本机结果(JDK 21,H2内存库,200个节点): 32个调用方一轮约90~110ms,即每次移动约3ms,
+ * 约15%的移动因版本号冲突回滚后重试,没有重试耗尽,每轮校验树均完整;
+ * 事务不锁根节点时第一轮即出现物化路径与父子关系不一致(并发移入LIKE前缀范围的节点路径遗漏更新)
+ * mvn -Pbenchmark exec:exec -Djmh.args="TreeMoveBenchmark"
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeMoveBenchmark {
+
+    private static final Long ORGANIZATION_ID = 1L;
+
+    //机构的节点数,节点越少并发移动越容易冲突
+    @Param({"200"})
+    private int nodes;
+
+    @Param({"32"})
+    private int callers;
+
+    private AnnotationConfigApplicationContext context;
+
+    private TreeBenchmarkApplication application;
+
+    private R2dbcEntityTemplate template;
+
+    private BenchmarkTreeService service;
+
+    private final Random random = new Random(20261019);
+
+    private final AtomicLong moved = new AtomicLong();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    @Setup
+    public void setup() {
+        context = TreeBenchmarkApplication.start();
+        application = context.getBean(TreeBenchmarkApplication.class);
+        template = context.getBean(R2dbcEntityTemplate.class);
+        service = context.getBean(BenchmarkTreeService.class);
+        TreeBenchmarkApplication.createTable(template.getDatabaseClient());
+        TreeBenchmarkApplication.insert(template, TreeBenchmarkApplication.nodes(ORGANIZATION_ID, nodes, nodes));
+        verify();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    //树服务内部阻塞等待H2的行锁,每个调用方在独立的线程上执行
+    @Benchmark
+    public Long moveNode() {
+        return Flux.range(0, callers)
+                .map(i -> dto())
+                .flatMap(dto -> service.moveNode(dto)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .then(Mono.fromRunnable(moved::incrementAndGet))
+                        .onErrorResume(e -> {
+                            if (e instanceof EventException && ES_COMPLIANCE_019.getCode().equals(((EventException) e).getCode())) exhausted.incrementAndGet();
+                            else failure.compareAndSet(null, e);
+                            return Mono.empty();
+                        }), callers)
+                .then(Mono.fromCallable(moved::get))
+                .block();
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() {
+        Throwable e = failure.get();
+        if (e != null) throw new IllegalStateException("moveNode failed with an error other than ES_COMPLIANCE_019", e);
+        List<BenchmarkTreeNodePO> tree = template.select(BenchmarkTreeNodePO.class).all().collectList().block();
+        if (tree.size() != nodes) throw new IllegalStateException("expected " + nodes + " nodes but found " + tree.size());
+        List<String> problems = TreeBenchmarkApplication.verify(tree);
+        if (!problems.isEmpty()) throw new IllegalStateException("tree corrupted: " + problems.subList(0, Math.min(10, problems.size())));
+        System.out.printf("moved=%d exhausted=%d commits=%d rollbacks=%d ", moved.get(), exhausted.get(), application.commits(), application.rollbacks());
+    }
+
+    //根节点的id为1,只移动其他节点,目标节点可以是当前节点的子孙节点
+    private MoveNodeDTO dto() {
+        long current = 2 + random.nextInt(nodes - 1);
+        long target;
+        do {
+            target = 1 + random.nextInt(nodes);
+        } while (target == current);
+        MoveNodeDTO dto = new MoveNodeDTO();
+        dto.setOrganizationId(ORGANIZATION_ID);
+        dto.setCurrentNodeId(current);
+        dto.setTargetNodeId(target);
+        return dto;
+    }
+}
@@ -16,4 +16,8 @@ public class EventException extends GlobalException {
     public EventException(ExceptionEnumFunction error, String message) {
         super(error.getCode(),message);
     }
+
+    protected EventException(ExceptionEnumFunction error, boolean enableSuppression, boolean writableStackTrace) {
+        super(error.getCode(),error.getMessage(),enableSuppression,writableStackTrace);
+    }
 }
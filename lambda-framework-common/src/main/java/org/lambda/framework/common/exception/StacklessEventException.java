@@ -0,0 +1,34 @@
+package org.lambda.framework.common.exception;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 无栈信息的业务异常
+ * 用于令牌无效、拒绝访问等可预期的控制流错误,不采集栈信息也不记录suppressed异常
+ * 每个异常枚举只创建一个实例并在所有请求间共享,因此code和message不可修改
+ * 非预期的异常仍然使用EventException保留完整的栈信息
+ **/
+public final class StacklessEventException extends EventException {
+
+    private static final Map<ExceptionEnumFunction, StacklessEventException> INSTANCES = new ConcurrentHashMap<>();
+
+    //共享的实例不能携带任何请求的状态: 不采集栈信息,不记录suppressed异常
+    private StacklessEventException(ExceptionEnumFunction error) {
+        super(error, false, false);
+    }
+
+    public static StacklessEventException of(ExceptionEnumFunction error) {
+        return INSTANCES.computeIfAbsent(error, StacklessEventException::new);
+    }
+
+    @Override
+    public void setCode(String code) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setMessage(String message) {
+        throw new UnsupportedOperationException();
+    }
+}
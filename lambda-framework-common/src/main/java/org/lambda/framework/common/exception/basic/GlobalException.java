@@ -17,6 +17,13 @@ public class GlobalException extends RuntimeException{
         this.message = message;
     }
 
+    //与RuntimeException的同名构造器一致,enableSuppression、writableStackTrace都为false时不记录suppressed异常也不采集栈信息,用于可预期的业务拒绝
+    protected GlobalException(String code, String message, boolean enableSuppression, boolean writableStackTrace){
+        super(message, null, enableSuppression, writableStackTrace);
+        this.code = code;
+        this.message = message;
+    }
+
     public String getCode() {
         return code;
     }
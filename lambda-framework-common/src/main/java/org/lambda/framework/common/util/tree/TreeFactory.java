@@ -3,8 +3,13 @@ package org.lambda.framework.common.util.tree;
 
 import lombok.Data;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class TreeFactory{
@@ -21,46 +26,64 @@ public class TreeFactory{
         root.setChildNodes(new ArrayList<Tree>());
     }
 
+    /**
+     * 先按nodeId建立索引,再逐个挂到父节点下,时间复杂度O(n),与节点的先后顺序无关
+     * 同级节点保持输入中的先后顺序,nodeId重复时挂到第一次出现的节点下,父节点不在输入中的节点被丢弃
+     */
     public TreeFactory createTree(List<TreeNode> treeNodes){
-        if(treeNodes == null || treeNodes.size() < 0)
+        if(treeNodes == null)
             return null;
 
         TreeFactory factory =  new TreeFactory();
 
-        //将所有节点添加到多叉树中
+        Map<String, Tree> index = new HashMap<>(Math.max(16, treeNodes.size() * 4 / 3 + 1));
+        List<Tree> trees = new ArrayList<>(treeNodes.size());
         for(TreeNode treeNode : treeNodes) {
-            if(treeNode.getParentId().equals("root")) {
+            Tree tree = new Tree();
+            tree.setNode(treeNode);
+            tree.setChildNodes(new ArrayList<Tree>());
+            index.putIfAbsent(treeNode.getNodeId(), tree);
+            trees.add(tree);
+        }
+
+        //将所有节点添加到多叉树中
+        for(Tree tree : trees) {
+            String parentId = tree.getNode().getParentId();
+            if("root".equals(parentId)) {
                 //向根添加一个节点
-                Tree tree = new Tree();
-                tree.setNode(treeNode);
-                tree.setChildNodes(new ArrayList<Tree>());
                 factory.getRoot().getChildNodes().add(tree);
+                continue;
             }
-            else {
-                addChild(factory.getRoot(), treeNode);
-            }
+            Tree parent = index.get(parentId);
+            if(parent != null) parent.getChildNodes().add(tree);
         }
 
         return factory;
     }
 
     /**
-     * 向指定多叉树节点添加子节点
+     * 向指定多叉树节点添加子节点,按深度优先找到第一个匹配的父节点后停止
      */
     public void addChild(Tree tree, TreeNode child) {
-        for(Tree item : tree.getChildNodes()) {
+        Deque<Iterator<Tree>> stack = new ArrayDeque<>();
+        if(tree.getChildNodes() != null) stack.push(tree.getChildNodes().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Tree> iterator = stack.peek();
+            if(!iterator.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Tree item = iterator.next();
             if(item.getNode().getNodeId().equals(child.getParentId())) {
                 //找到对应的父亲
                 Tree childTree = new Tree();
                 childTree.setNode(child);
                 childTree.setChildNodes(new ArrayList<Tree>());
                 item.getChildNodes().add(childTree);
-                break;
+                return;
             }
-            else {
-                if(item.getChildNodes() != null && item.getChildNodes().size() > 0) {
-                    addChild(item, child);
-                }
+            if(item.getChildNodes() != null && item.getChildNodes().size() > 0) {
+                stack.push(item.getChildNodes().iterator());
             }
         }
     }
@@ -68,20 +91,32 @@ public class TreeFactory{
      * 遍历多叉树
      */
     public String iteratorTree(Tree tree) {
-        StringBuilder buffer = new StringBuilder();
-        buffer.append("\n");
-
-        if(tree != null) {
-            for (Tree index : tree.getChildNodes()) {
-                buffer.append(index.getNode().getNodeId()+ ",");
+        return iteratorTree(tree, new StringBuilder()).toString();
+    }
 
-                if (index.getChildNodes() != null && index.getChildNodes().size() > 0 ) {
-                    buffer.append(iteratorTree(index));
-                }
+    /**
+     * 遍历多叉树,结果追加到buffer中,使用栈代替递归,所有层级共用同一个buffer
+     */
+    public StringBuilder iteratorTree(Tree tree, StringBuilder buffer) {
+        buffer.append("\n");
+        Deque<Iterator<Tree>> stack = new ArrayDeque<>();
+        if(tree == null || tree.getChildNodes() == null) return buffer.append("\n");
+        stack.push(tree.getChildNodes().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Tree> iterator = stack.peek();
+            if(!iterator.hasNext()) {
+                stack.pop();
+                //每一层结束时换行,与子节点开始时的换行成对
+                buffer.append("\n");
+                continue;
+            }
+            Tree index = iterator.next();
+            buffer.append(index.getNode().getNodeId()).append(',');
+            if (index.getChildNodes() != null && index.getChildNodes().size() > 0 ) {
+                buffer.append("\n");
+                stack.push(index.getChildNodes().iterator());
             }
         }
-        buffer.append("\n");
-
-        return buffer.toString();
+        return buffer;
     }
 }
@@ -0,0 +1,91 @@
+package org.lambda.framework.common.util.tree;
+
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: 改为索引建树之前的TreeFactory,原样保留,用于对比输出和基准测试
+ * addChild递归遍历整棵树查找父节点,父节点必须先于子节点出现在输入中
+ **/
+@Data
+public class LegacyTreeFactory {
+    /** 树根*/
+    private Tree root;
+
+    public LegacyTreeFactory()
+    {
+        TreeNode node = new TreeNode();
+        node.setNodeId("root");
+
+        root = new Tree();
+        root.setNode(node);
+        root.setChildNodes(new ArrayList<Tree>());
+    }
+
+    public LegacyTreeFactory createTree(List<TreeNode> treeNodes){
+        if(treeNodes == null || treeNodes.size() < 0)
+            return null;
+
+        LegacyTreeFactory factory =  new LegacyTreeFactory();
+
+        //将所有节点添加到多叉树中
+        for(TreeNode treeNode : treeNodes) {
+            if(treeNode.getParentId().equals("root")) {
+                //向根添加一个节点
+                Tree tree = new Tree();
+                tree.setNode(treeNode);
+                tree.setChildNodes(new ArrayList<Tree>());
+                factory.getRoot().getChildNodes().add(tree);
+            }
+            else {
+                addChild(factory.getRoot(), treeNode);
+            }
+        }
+
+        return factory;
+    }
+
+    /**
+     * 向指定多叉树节点添加子节点
+     */
+    public void addChild(Tree tree, TreeNode child) {
+        for(Tree item : tree.getChildNodes()) {
+            if(item.getNode().getNodeId().equals(child.getParentId())) {
+                //找到对应的父亲
+                Tree childTree = new Tree();
+                childTree.setNode(child);
+                childTree.setChildNodes(new ArrayList<Tree>());
+                item.getChildNodes().add(childTree);
+                break;
+            }
+            else {
+                if(item.getChildNodes() != null && item.getChildNodes().size() > 0) {
+                    addChild(item, child);
+                }
+            }
+        }
+    }
+    /**
+     * 遍历多叉树
+     */
+    public String iteratorTree(Tree tree) {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("\n");
+
+        if(tree != null) {
+            for (Tree index : tree.getChildNodes()) {
+                buffer.append(index.getNode().getNodeId()+ ",");
+
+                if (index.getChildNodes() != null && index.getChildNodes().size() > 0 ) {
+                    buffer.append(iteratorTree(index));
+                }
+            }
+        }
+        buffer.append("\n");
+
+        return buffer.toString();
+    }
+}
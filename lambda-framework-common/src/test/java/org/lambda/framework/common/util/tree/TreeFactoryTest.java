@@ -0,0 +1,99 @@
+package org.lambda.framework.common.util.tree;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TreeFactoryTest {
+
+    //父节点先于子节点出现时,输出与改造前完全一致
+    @Test
+    public void inOrderInputMatchesLegacy() {
+        List<TreeNode> nodes = randomTree(5000, 7);
+        String expected = new LegacyTreeFactory().iteratorTree(new LegacyTreeFactory().createTree(nodes).getRoot());
+        String actual = new TreeFactory().iteratorTree(new TreeFactory().createTree(nodes).getRoot());
+        assertEquals(expected, actual);
+    }
+
+    //子节点先于父节点出现时,所有节点都挂到各自的父节点下
+    @Test
+    public void reversedInputIsLinked() {
+        List<TreeNode> nodes = randomTree(5000, 11);
+        List<TreeNode> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+        Map<String, String> parents = parents(new TreeFactory().createTree(reversed).getRoot());
+        assertEquals(nodes.size(), parents.size());
+        for (TreeNode node : nodes) {
+            assertEquals(node.getParentId(), parents.get(node.getNodeId()));
+        }
+    }
+
+    //父节点不在输入中的节点被丢弃
+    @Test
+    public void orphanIsDropped() {
+        List<TreeNode> nodes = randomTree(100, 13);
+        nodes.add(node("orphan", "missing"));
+        Map<String, String> parents = parents(new TreeFactory().createTree(nodes).getRoot());
+        assertEquals(100, parents.size());
+        assertFalse(parents.containsKey("orphan"));
+    }
+
+    //两万层的链,建树和遍历都不会栈溢出
+    @Test
+    public void deepChainDoesNotOverflow() {
+        int depth = 20000;
+        List<TreeNode> nodes = new ArrayList<>(depth);
+        nodes.add(node("0", "root"));
+        for (int i = 1; i < depth; i++) {
+            nodes.add(node(String.valueOf(i), String.valueOf(i - 1)));
+        }
+        Collections.reverse(nodes);
+        TreeFactory factory = new TreeFactory().createTree(nodes);
+        assertEquals(depth, parents(factory.getRoot()).size());
+        String output = factory.iteratorTree(factory.getRoot());
+        assertEquals(depth, output.chars().filter(c -> c == ',').count());
+    }
+
+    //每个节点的父节点在它之前随机选取
+    static List<TreeNode> randomTree(int size, long seed) {
+        Random random = new Random(seed);
+        List<TreeNode> nodes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String parentId = i == 0 || random.nextInt(10) == 0 ? "root" : nodes.get(random.nextInt(i)).getNodeId();
+            nodes.add(node("n" + i, parentId));
+        }
+        return nodes;
+    }
+
+    private static TreeNode node(String nodeId, String parentId) {
+        TreeNode node = new TreeNode();
+        node.setNodeId(nodeId);
+        node.setParentId(parentId);
+        return node;
+    }
+
+    //按树的结构收集每个节点的父节点id
+    private static Map<String, String> parents(Tree root) {
+        Map<String, String> parents = new HashMap<>();
+        Deque<Tree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Tree tree = stack.pop();
+            for (Tree child : tree.getChildNodes()) {
+                parents.put(child.getNode().getNodeId(), tree.getNode().getNodeId());
+                stack.push(child);
+            }
+        }
+        return parents;
+    }
+}
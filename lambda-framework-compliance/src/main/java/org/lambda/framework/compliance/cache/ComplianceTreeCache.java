@@ -0,0 +1,141 @@
+package org.lambda.framework.compliance.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.lambda.framework.compliance.repository.po.IFlattenTreePO;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * @description: 按机构缓存组装好的树
+ * 缓存的树是只读的,所有层级的子节点列表都不可修改,命中时直接返回同一份对象
+ * 节点本身仍是可变的PO,为避免每次命中都复制整棵树不做拷贝,调用方不能修改节点的字段,需要修改时先复制节点
+ * 树的写操作完成后使当前节点的缓存失效,并通过redis发布失效消息,其他节点收到后清除本地缓存
+ * 每个机构维护一个版本号,加载开始后发生过失效的结果不会写入缓存,避免并发加载把旧树放回去
+ * 版本号的检查与写入缓存、版本号的递增与清除缓存都在缓存该key的compute中完成,两者不会交错
+ * 与redis的订阅断开期间可能丢失失效消息,重新订阅时清空本地缓存
+ **/
+@Slf4j
+public class ComplianceTreeCache {
+
+    private static final String CHANNEL = "lambda.compliance.tree-cache.invalidate";
+
+    private final ReactiveRedisOperation redisOperation;
+
+    private final Cache<String, List<?>> trees;
+
+    //机构的失效版本号
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    //正在加载的树,同一机构同时只加载一次
+    private final Map<String, Mono<List<?>>> loading = new ConcurrentHashMap<>();
+
+    private Disposable subscriber;
+
+    public ComplianceTreeCache(ReactiveRedisOperation redisOperation, Long maximumSize, Long expireSeconds) {
+        this.redisOperation = redisOperation;
+        this.trees = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void subscribe() {
+        Flux<ReactiveSubscription.Message<String, Object>> messages = redisOperation.listenToChannel(CHANNEL);
+        this.subscriber = messages
+                .doOnSubscribe(e -> trees.invalidateAll())
+                .doOnNext(message -> evict(String.valueOf(message.getMessage())))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(e -> log.warn("compliance tree cache subscription lost: {}", e.failure().getMessage())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (subscriber != null) subscriber.dispose();
+    }
+
+    //返回的树与其他调用方共享,不能修改其中的节点
+    @SuppressWarnings("unchecked")
+    public <PO extends IFlattenTreePO> Mono<List<PO>> get(Class<?> type, Long organizationId, Supplier<Mono<List<PO>>> loader) {
+        String key = key(type, organizationId);
+        List<?> tree = trees.getIfPresent(key);
+        if (tree != null) return Mono.just((List<PO>) tree);
+        return Mono.defer(() -> (Mono<List<PO>>) (Mono<?>) loading.computeIfAbsent(key, k -> load(k, loader)));
+    }
+
+    private <PO extends IFlattenTreePO> Mono<List<?>> load(String key, Supplier<Mono<List<PO>>> loader) {
+        AtomicLong generation = generations.computeIfAbsent(key, k -> new AtomicLong());
+        long started = generation.get();
+        return Mono.defer(loader)
+                .<List<?>>map(tree -> {
+                    List<PO> frozen = freeze(tree);
+                    //加载期间发生过失效,结果只返回给本次调用方,不写入缓存
+                    trees.asMap().compute(key, (k, cached) -> generation.get() == started ? frozen : cached);
+                    return frozen;
+                })
+                //期间发生过失效时,加载记录已被移除,此时可能已经有新的加载,不能再移除
+                .doFinally(signal -> {
+                    if (generation.get() == started) loading.remove(key);
+                })
+                .cache();
+    }
+
+    //清除本地缓存并通知其他节点,redis不可用时只清除本地
+    @SuppressWarnings("unchecked")
+    public Mono<Void> invalidate(Class<?> type, Long organizationId) {
+        String key = key(type, organizationId);
+        evict(key);
+        Mono<Long> publish = redisOperation.convertAndSend(CHANNEL, key);
+        return publish
+                .doOnError(e -> log.warn("compliance tree cache publish failed: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private void evict(String key) {
+        AtomicLong generation = generations.computeIfAbsent(key, k -> new AtomicLong());
+        trees.asMap().compute(key, (k, cached) -> {
+            generation.incrementAndGet();
+            return null;
+        });
+        loading.remove(key);
+    }
+
+    //将所有层级的子节点列表替换为不可修改的列表,节点的字段不做处理
+    private static <PO extends IFlattenTreePO> List<PO> freeze(List<PO> tree) {
+        Deque<PO> queue = new ArrayDeque<>(tree);
+        while (!queue.isEmpty()) {
+            PO node = queue.poll();
+            List<PO> childrens = node.getChildrens();
+            if (childrens == null) continue;
+            queue.addAll(childrens);
+            node.setChildrens(Collections.unmodifiableList(childrens));
+        }
+        return Collections.unmodifiableList(tree);
+    }
+
+    private static String key(Class<?> type, Long organizationId) {
+        return type.getName() + "." + organizationId;
+    }
+}
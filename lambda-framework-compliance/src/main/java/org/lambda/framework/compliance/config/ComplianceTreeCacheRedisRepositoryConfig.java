@@ -0,0 +1,38 @@
+package org.lambda.framework.compliance.config;
+
+import org.lambda.framework.compliance.cache.ComplianceTreeCache;
+import org.lambda.framework.redis.config.AbstractPrefixedReactiveRedisRepositoryConfig;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @description: 机构树缓存使用的redis,用于广播失效消息,lambda.compliance.tree-cache.enable=true时生效
+ * 连接参数为 lambda.compliance.tree-cache.redis.*
+ **/
+@Configuration
+@ConditionalOnProperty(prefix = "lambda.compliance.tree-cache", name = "enable", havingValue = "true")
+public class ComplianceTreeCacheRedisRepositoryConfig extends AbstractPrefixedReactiveRedisRepositoryConfig {
+    //缓存过期时间,作为丢失失效消息时的兜底
+    @Value("${lambda.compliance.tree-cache.expire-seconds:600}")
+    private Long expireSeconds;
+    //本地最多缓存的机构数
+    @Value("${lambda.compliance.tree-cache.maximum-size:1000}")
+    private Long maximumSize;
+
+    public ComplianceTreeCacheRedisRepositoryConfig() {
+        super("lambda.compliance.tree-cache");
+    }
+
+    @Bean("complianceTreeCacheRedisOperation")
+    public ReactiveRedisOperation complianceTreeCacheRedisOperation(){
+        return buildRedisOperation();
+    }
+
+    @Bean
+    public ComplianceTreeCache complianceTreeCache(){
+        return new ComplianceTreeCache(complianceTreeCacheRedisOperation(), maximumSize, expireSeconds);
+    }
+}
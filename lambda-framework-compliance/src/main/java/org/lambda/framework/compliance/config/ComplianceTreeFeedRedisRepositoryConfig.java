@@ -0,0 +1,38 @@
+package org.lambda.framework.compliance.config;
+
+import org.lambda.framework.compliance.feed.ComplianceTreeFeed;
+import org.lambda.framework.redis.config.AbstractPrefixedReactiveRedisRepositoryConfig;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @description: 机构树变更流使用的redis,用于保存每个机构的增量,lambda.compliance.tree-feed.enable=true时生效
+ * 连接参数为 lambda.compliance.tree-feed.redis.*
+ **/
+@Configuration
+@ConditionalOnProperty(prefix = "lambda.compliance.tree-feed", name = "enable", havingValue = "true")
+public class ComplianceTreeFeedRedisRepositoryConfig extends AbstractPrefixedReactiveRedisRepositoryConfig {
+    //每个机构的流最多保留的增量条数,超过后近似裁剪
+    @Value("${lambda.compliance.tree-feed.max-length:1000}")
+    private Long maxLength;
+    //订阅方没有新增量时的轮询间隔
+    @Value("${lambda.compliance.tree-feed.poll-millis:1000}")
+    private Long pollMillis;
+
+    public ComplianceTreeFeedRedisRepositoryConfig() {
+        super("lambda.compliance.tree-feed");
+    }
+
+    @Bean("complianceTreeFeedRedisOperation")
+    public ReactiveRedisOperation complianceTreeFeedRedisOperation(){
+        return buildRedisOperation();
+    }
+
+    @Bean
+    public ComplianceTreeFeed complianceTreeFeed(){
+        return new ComplianceTreeFeed(complianceTreeFeedRedisOperation(), maxLength, pollMillis);
+    }
+}
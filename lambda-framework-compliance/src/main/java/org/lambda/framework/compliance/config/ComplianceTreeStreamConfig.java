@@ -0,0 +1,29 @@
+package org.lambda.framework.compliance.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.compliance.stream.TreeJsonStream;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_021;
+
+/**
+ * @description: 树的流式JSON输出,使用响应JSON编码器的ObjectMapper
+ **/
+@Configuration
+public class ComplianceTreeStreamConfig {
+
+    @Bean
+    public TreeJsonStream treeJsonStream(ServerCodecConfigurer serverCodecConfigurer){
+        ObjectMapper objectMapper = serverCodecConfigurer.getWriters().stream()
+                .filter(e -> e instanceof EncoderHttpMessageWriter<?> writer && writer.getEncoder() instanceof Jackson2JsonEncoder)
+                .map(e -> ((Jackson2JsonEncoder) ((EncoderHttpMessageWriter<?>) e).getEncoder()).getObjectMapper())
+                .findFirst()
+                .orElseThrow(() -> new EventException(ES_COMPLIANCE_021));
+        return new TreeJsonStream(objectMapper);
+    }
+}
@@ -4,7 +4,9 @@ package org.lambda.framework.compliance.controller;
 import org.lambda.framework.common.exception.EventException;
 import org.lambda.framework.compliance.repository.po.UnifyPO;
 import org.lambda.framework.compliance.service.IDefaultBasicService;
+import org.lambda.framework.compliance.service.dto.CursorDTO;
 import org.lambda.framework.compliance.service.dto.PagingDTO;
+import org.lambda.framework.repository.operation.Cursored;
 import org.lambda.framework.repository.operation.Paged;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -72,7 +74,14 @@ public  class DefaultBasicController<PO extends UnifyPO,ID,Service extends IDefa
     @PostMapping("/paging")
     public Mono<Paged<PO>> paging(PagingDTO<PO> pagingDTO) {
         if(pagingDTO == null)throw new EventException(ES_COMPLIANCE_000);
-        return this.service.find(pagingDTO.getPage(),pagingDTO.getSize(),pagingDTO.getCondition());
+        return this.service.find(pagingDTO.getPage(),pagingDTO.getSize(),pagingDTO.getCondition(),pagingDTO.getMode());
+    }
+
+    //游标分页,适用于大表的深度翻页
+    @PostMapping("/cursor")
+    public Mono<Cursored<PO>> cursor(CursorDTO<PO> cursorDTO) {
+        if(cursorDTO == null)throw new EventException(ES_COMPLIANCE_000);
+        return this.service.find(cursorDTO.getCursor(),cursorDTO.getSize(),cursorDTO.getCondition());
     }
 
     @GetMapping("/get")
@@ -7,15 +7,23 @@ import org.lambda.framework.compliance.repository.po.IFlattenTreePO;
 import org.lambda.framework.compliance.repository.po.UnifyPO;
 import org.lambda.framework.compliance.service.IDefaultTreeService;
 import org.lambda.framework.compliance.service.dto.*;
+import org.lambda.framework.compliance.stream.TreeJsonStream;
 import org.lambda.framework.security.SecurityPrincipalUtil;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.Map;
 
 import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_012;
 import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_018;
@@ -27,6 +35,8 @@ public class DefaultTreeController<PO extends UnifyPO & IFlattenTreePO,ID,Servic
     }
     @Resource
     private SecurityPrincipalUtil securityPrincipalUtil;
+    @Resource
+    private TreeJsonStream treeJsonStream;
 
 
     //根据org_id 开放不同权限操作的接口
@@ -34,6 +44,29 @@ public class DefaultTreeController<PO extends UnifyPO & IFlattenTreePO,ID,Servic
     public Mono<List<PO>> superFindTree(@RequestBody FindTreeDTO dto){
         return service.findTree(dto);
     }
+    @GetMapping("/super/findSubtree")
+    public Mono<List<PO>> superFindSubtree(@RequestBody FindSubtreeDTO dto){
+        return service.findSubtree(dto);
+    }
+    //与findTree、findSubtree的结果相同,按节点逐块写出JSON,适用于节点很多的机构
+    @GetMapping("/super/streamTree")
+    public Flux<DataBuffer> superStreamTree(@RequestBody FindTreeDTO dto, ServerWebExchange exchange){
+        return service.findTree(dto).flatMapMany(tree -> treeJsonStream.write(tree, exchange.getResponse().bufferFactory()));
+    }
+    @GetMapping("/super/streamSubtree")
+    public Flux<DataBuffer> superStreamSubtree(@RequestBody FindSubtreeDTO dto, ServerWebExchange exchange){
+        return service.findSubtree(dto).flatMapMany(tree -> treeJsonStream.write(tree, exchange.getResponse().bufferFactory()));
+    }
+    //机构树的增量推送,EventSource断线重连时浏览器会自动带上Last-Event-ID
+    @GetMapping(value = "/super/feedTree", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> superFeedTree(FeedTreeDTO dto, @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId){
+        if(lastEventId != null) dto.setLastEventId(lastEventId);
+        return service.feedTree(dto);
+    }
+    @GetMapping("/super/findAncestors")
+    public Mono<List<PO>> superFindAncestors(@RequestBody FindAncestorsDTO dto){
+        return service.findAncestors(dto);
+    }
     @PostMapping("/super/moveNode")
     public Mono<Void> superMoveNode(@RequestBody MoveNodeDTO dto){
         return service.moveNode(dto);
@@ -69,6 +102,52 @@ public class DefaultTreeController<PO extends UnifyPO & IFlattenTreePO,ID,Servic
             return service.findTree(dto);
         });
     }
+    @GetMapping("/principal/findSubtree")
+    public Mono<List<PO>> principalFindSubtree(@RequestBody FindSubtreeDTO dto){
+        return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
+                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_012)))
+                .flatMap(e->{
+                    dto.setOrganizationId(e.getOrganizationId());
+                    return service.findSubtree(dto);
+                });
+    }
+    @GetMapping("/principal/streamTree")
+    public Flux<DataBuffer> principalStreamTree(@RequestBody FindTreeDTO dto, ServerWebExchange exchange){
+        return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
+                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_012)))
+                .flatMapMany(e->{
+                    dto.setOrganizationId(e.getOrganizationId());
+                    return service.findTree(dto).flatMapMany(tree -> treeJsonStream.write(tree, exchange.getResponse().bufferFactory()));
+                });
+    }
+    @GetMapping("/principal/streamSubtree")
+    public Flux<DataBuffer> principalStreamSubtree(@RequestBody FindSubtreeDTO dto, ServerWebExchange exchange){
+        return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
+                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_012)))
+                .flatMapMany(e->{
+                    dto.setOrganizationId(e.getOrganizationId());
+                    return service.findSubtree(dto).flatMapMany(tree -> treeJsonStream.write(tree, exchange.getResponse().bufferFactory()));
+                });
+    }
+    @GetMapping(value = "/principal/feedTree", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> principalFeedTree(FeedTreeDTO dto, @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId){
+        return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
+                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_012)))
+                .flatMapMany(e->{
+                    dto.setOrganizationId(e.getOrganizationId());
+                    if(lastEventId != null) dto.setLastEventId(lastEventId);
+                    return service.feedTree(dto);
+                });
+    }
+    @GetMapping("/principal/findAncestors")
+    public Mono<List<PO>> principalFindAncestors(@RequestBody FindAncestorsDTO dto){
+        return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
+                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_012)))
+                .flatMap(e->{
+                    dto.setOrganizationId(e.getOrganizationId());
+                    return service.findAncestors(dto);
+                });
+    }
     @PostMapping("/principal/moveNode")
     public Mono<Void> principalMoveNode(@RequestBody MoveNodeDTO dto){
         return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
@@ -23,7 +23,11 @@ public enum ComplianceExceptionEnum implements ExceptionEnumFunction {
     ES_COMPLIANCE_015("ES_COMPLIANCE_015","修改节点时，目标id必须有效"),
     ES_COMPLIANCE_016("ES_COMPLIANCE_016","此根节点拥有子树，不允许删除"),
     ES_COMPLIANCE_017("ES_COMPLIANCE_017","创建此节点，不需要指定parentId"),
-    ES_COMPLIANCE_018("ES_COMPLIANCE_018","获取节点类型失败");
+    ES_COMPLIANCE_018("ES_COMPLIANCE_018","获取节点类型失败"),
+    ES_COMPLIANCE_019("ES_COMPLIANCE_019","节点已被其他操作修改,请重新操作"),
+    ES_COMPLIANCE_020("ES_COMPLIANCE_020","未开启机构树的变更订阅"),
+    ES_COMPLIANCE_021("ES_COMPLIANCE_021","未找到JSON编码器"),
+    ES_COMPLIANCE_022("ES_COMPLIANCE_022","更新带版本号的数据时必须提供读取时的版本号");
 
 
 
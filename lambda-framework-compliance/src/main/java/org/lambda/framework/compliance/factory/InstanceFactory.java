@@ -0,0 +1,64 @@
+package org.lambda.framework.compliance.factory;
+
+import org.lambda.framework.common.exception.EventException;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Supplier;
+
+import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_014;
+
+/**
+ * @description: 实体实例工厂
+ * 每个类型的无参构造器只解析一次,通过LambdaMetafactory生成Supplier,之后的创建与直接new相同
+ * 无法生成Supplier时退回MethodHandle调用,没有可访问的无参构造器时每次创建都抛出异常
+ **/
+public class InstanceFactory {
+
+    private static final ClassValue<Supplier<?>> FACTORIES = new ClassValue<>() {
+        @Override
+        protected Supplier<?> computeValue(Class<?> type) {
+            return factory(type);
+        }
+    };
+
+    private InstanceFactory() {
+    }
+
+    public static <T> T instance(Class<T> type) {
+        return type.cast(FACTORIES.get(type).get());
+    }
+
+    private static Supplier<?> factory(Class<?> type) {
+        MethodHandles.Lookup lookup;
+        MethodHandle constructor;
+        try {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return () -> {
+                throw new EventException(ES_COMPLIANCE_014);
+            };
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(type));
+            return (Supplier<?>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            MethodHandle handle = constructor.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return handle.invokeExact();
+                } catch (Throwable t) {
+                    throw new EventException(ES_COMPLIANCE_014);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.lambda.framework.compliance.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @description: 机构树的变更流
+ * 树的写操作成功后向机构对应的redis stream追加一条增量,流按maxLength近似裁剪
+ * 订阅方从Last-Event-ID之后开始读取,没有时从订阅时刻开始,每条增量的SSE id即stream的记录id,断线重连时不丢失
+ * 读取不使用阻塞的XREAD,阻塞读取会为每个订阅方独占一个连接池中的连接,改为在共享连接上按间隔轮询
+ * Last-Event-ID之后的记录已被裁剪时先发出reset事件,订阅方应重新加载整棵树
+ *
+ * 增量的type及订阅方的处理方式:
+ * BUILD  在parentId下新增节点node,parentId为-1时为根节点
+ * EDIT   用node替换nodeId节点的内容,父子关系不变
+ * MOVE   nodeId的子节点挂靠到nodeId原来的父节点;targetNodeId为-1时原父节点挂靠到nodeId,nodeId成为根节点,否则nodeId挂靠到targetNodeId
+ * REMOVE 删除nodeId,其子节点挂靠到nodeId原来的父节点
+ **/
+@Slf4j
+public class ComplianceTreeFeed {
+
+    public static final String BUILD = "BUILD";
+    public static final String EDIT = "EDIT";
+    public static final String MOVE = "MOVE";
+    public static final String REMOVE = "REMOVE";
+    public static final String RESET = "reset";
+
+    private static final String PREFIX = "lambda.compliance.tree-feed.";
+
+    //每次轮询最多读取的记录数,读满时立即继续读取
+    private static final int COUNT = 200;
+
+    //没有增量时的心跳间隔,避免代理断开空闲连接
+    private static final Duration HEARTBEAT = Duration.ofSeconds(15);
+
+    private final ReactiveRedisOperation redisOperation;
+
+    private final Long maxLength;
+
+    private final Duration poll;
+
+    public ComplianceTreeFeed(ReactiveRedisOperation redisOperation, Long maxLength, Long pollMillis) {
+        this.redisOperation = redisOperation;
+        this.maxLength = maxLength;
+        this.poll = Duration.ofMillis(pollMillis);
+    }
+
+    public static Map<String, Object> delta(String type, Long nodeId, Long parentId, Long targetNodeId, Object node) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("type", type);
+        delta.put("nodeId", nodeId);
+        if (parentId != null) delta.put("parentId", parentId);
+        if (targetNodeId != null) delta.put("targetNodeId", targetNodeId);
+        if (node != null) delta.put("node", node);
+        return delta;
+    }
+
+    //发布失败只记录日志,不影响已经完成的写操作,订阅方可通过reset或重新加载恢复
+    @SuppressWarnings("unchecked")
+    public Mono<Void> publish(Class<?> type, Long organizationId, Map<String, Object> delta) {
+        String key = key(type, organizationId);
+        Mono<RecordId> add = redisOperation.opsForStream().add(key, delta);
+        return add
+                .flatMap(id -> (Mono<Long>) redisOperation.opsForStream().trim(key, maxLength, true))
+                .doOnError(e -> log.warn("compliance tree feed publish failed: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    public Flux<ServerSentEvent<Map<String, Object>>> subscribe(Class<?> type, Long organizationId, String lastEventId) {
+        String key = key(type, organizationId);
+        Flux<ServerSentEvent<Map<String, Object>>> deltas;
+        if (lastEventId == null) {
+            deltas = latest(key).flatMapMany(from -> tail(key, from));
+        } else {
+            deltas = first(key).flatMapMany(first -> {
+                Flux<ServerSentEvent<Map<String, Object>>> tail = tail(key, lastEventId);
+                if (compare(first, lastEventId) <= 0) return tail;
+                return Flux.just(ServerSentEvent.<Map<String, Object>>builder().event(RESET).build()).concatWith(tail);
+            });
+        }
+        Flux<ServerSentEvent<Map<String, Object>>> heartbeat = Flux.interval(HEARTBEAT)
+                .map(i -> ServerSentEvent.<Map<String, Object>>builder().comment("heartbeat").build());
+        return Flux.merge(deltas, heartbeat);
+    }
+
+    //从from之后轮询读取,读满一批时立即继续,否则等待一个轮询间隔
+    @SuppressWarnings("unchecked")
+    private Flux<ServerSentEvent<Map<String, Object>>> tail(String key, String from) {
+        AtomicReference<String> cursor = new AtomicReference<>(from);
+        AtomicInteger received = new AtomicInteger();
+        return Flux.defer(() -> {
+                    received.set(0);
+                    return (Flux<MapRecord<String, String, Object>>) redisOperation.opsForStream()
+                            .read(StreamReadOptions.empty().count(COUNT), StreamOffset.create(key, ReadOffset.from(cursor.get())));
+                })
+                .doOnNext(record -> {
+                    received.incrementAndGet();
+                    cursor.set(record.getId().getValue());
+                })
+                .repeatWhen(rounds -> rounds.concatMap(round -> received.get() >= COUNT ? Mono.just(round) : Mono.delay(poll).thenReturn(round)))
+                .map(record -> ServerSentEvent.<Map<String, Object>>builder()
+                        .id(record.getId().getValue())
+                        .event(String.valueOf(record.getValue().get("type")))
+                        .data(new LinkedHashMap<>(record.getValue()))
+                        .build());
+    }
+
+    //流中最新的记录id,流为空时从头开始
+    @SuppressWarnings("unchecked")
+    private Mono<String> latest(String key) {
+        Flux<MapRecord<String, String, Object>> records = redisOperation.opsForStream().reverseRange(key, Range.unbounded(), Limit.limit().count(1));
+        return records.next().map(e -> e.getId().getValue()).defaultIfEmpty("0-0");
+    }
+
+    //流中最早的记录id,流为空时视为没有裁剪
+    @SuppressWarnings("unchecked")
+    private Mono<String> first(String key) {
+        Flux<MapRecord<String, String, Object>> records = redisOperation.opsForStream().range(key, Range.unbounded(), Limit.limit().count(1));
+        return records.next().map(e -> e.getId().getValue()).defaultIfEmpty("0-0");
+    }
+
+    //按 毫秒-序号 比较两个记录id,id格式不正确时视为已被裁剪
+    private static int compare(String first, String lastEventId) {
+        String[] a = first.split("-");
+        String[] b = lastEventId.split("-");
+        try {
+            int ms = Long.compare(Long.parseLong(a[0]), Long.parseLong(b[0]));
+            if (ms != 0) return ms;
+            return Long.compare(Long.parseLong(a[a.length - 1]), Long.parseLong(b[b.length - 1]));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private static String key(Class<?> type, Long organizationId) {
+        return PREFIX + type.getName() + "." + organizationId;
+    }
+}
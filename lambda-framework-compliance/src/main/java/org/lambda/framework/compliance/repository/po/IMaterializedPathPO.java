@@ -0,0 +1,18 @@
+package org.lambda.framework.compliance.repository.po;
+
+/**
+ * @description: 带物化路径的树节点
+ * path保存从根节点到当前节点的id,格式为 /根id/.../当前id/,depth为层级,根节点为0
+ * 实体实现此接口后,树服务在创建、移动、删除节点时维护这两个字段,子树和祖先查询直接使用路径前缀
+ * 表中需要对应的path、depth列,并建立(organization_id, path)索引
+ **/
+public interface IMaterializedPathPO extends IFlattenTreePO {
+
+    public String getPath();
+
+    public void setPath(String path);
+
+    public Integer getDepth();
+
+    public void setDepth(Integer depth);
+}
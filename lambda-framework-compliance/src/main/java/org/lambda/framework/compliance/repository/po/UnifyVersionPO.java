@@ -0,0 +1,19 @@
+package org.lambda.framework.compliance.repository.po;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.springframework.data.annotation.Version;
+
+/**
+ * @description: 带版本号的统一实体
+ * 继承此类的实体在更新时校验版本号,版本号不一致时抛出OptimisticLockingFailureException
+ * 新增时版本号为空,由框架写入0;更新时必须带上读取时的版本号
+ * 表中需要对应的version列
+ **/
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class UnifyVersionPO extends UnifyPO {
+
+    @Version
+    private Long version;
+}
@@ -1,6 +1,8 @@
 package org.lambda.framework.compliance.service;
 
 import org.lambda.framework.compliance.repository.po.UnifyPO;
+import org.lambda.framework.repository.enums.PagingMode;
+import org.lambda.framework.repository.operation.Cursored;
 import org.lambda.framework.repository.operation.Paged;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
@@ -30,4 +32,8 @@ public interface IDefaultBasicService<PO extends UnifyPO,ID>{
     public Mono<PO> get(PO po);
 
     public Mono<Paged<PO>> find(Long page, Long size, PO po);
+
+    public Mono<Paged<PO>> find(Long page, Long size, PO po, PagingMode mode);
+
+    public Mono<Cursored<PO>> find(String cursor, Long size, PO po);
 }
@@ -3,13 +3,20 @@ package org.lambda.framework.compliance.service;
 import org.lambda.framework.compliance.repository.po.IFlattenTreePO;
 import org.lambda.framework.compliance.repository.po.UnifyPO;
 import org.lambda.framework.compliance.service.dto.*;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
 
 public interface IDefaultTreeService<PO extends UnifyPO & IFlattenTreePO,ID> extends IDefaultBasicService<PO,ID>{
     public Mono<List<PO>> findTree(FindTreeDTO dto);
 
+    public Mono<List<PO>> findSubtree(FindSubtreeDTO dto);
+
+    public Mono<List<PO>> findAncestors(FindAncestorsDTO dto);
+
     public Mono<Void> moveNode(MoveNodeDTO dto);
 
     public Mono<Void> buildRoot(BuildRootDTO<PO> dto);
@@ -19,5 +26,7 @@ public interface IDefaultTreeService<PO extends UnifyPO & IFlattenTreePO,ID> ext
 
     public Mono<Void> removeNode(RemoveNodeDTO dto);
 
+    public Flux<ServerSentEvent<Map<String, Object>>> feedTree(FeedTreeDTO dto);
+
 
 }
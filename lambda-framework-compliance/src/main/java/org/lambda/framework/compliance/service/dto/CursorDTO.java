@@ -0,0 +1,17 @@
+package org.lambda.framework.compliance.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorDTO<Condition> {
+    //上一页返回的游标,第一页为空
+    private String cursor;
+    private Long size;
+    private Condition Condition;
+}
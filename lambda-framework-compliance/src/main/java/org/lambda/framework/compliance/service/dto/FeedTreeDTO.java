@@ -0,0 +1,16 @@
+package org.lambda.framework.compliance.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FeedTreeDTO {
+    private Long organizationId;
+    //断线重连时最后收到的增量id,为空时从订阅时刻开始
+    private String lastEventId;
+}
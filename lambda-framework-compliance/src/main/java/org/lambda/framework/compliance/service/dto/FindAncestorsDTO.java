@@ -0,0 +1,15 @@
+package org.lambda.framework.compliance.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FindAncestorsDTO {
+    private Long nodeId;
+    private Long organizationId;
+}
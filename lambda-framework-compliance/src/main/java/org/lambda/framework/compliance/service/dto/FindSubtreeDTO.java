@@ -0,0 +1,17 @@
+package org.lambda.framework.compliance.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FindSubtreeDTO {
+    private Long nodeId;
+    //向下查询的层数,0只返回节点本身,为空时不限制
+    private Integer depth;
+    private Long organizationId;
+}
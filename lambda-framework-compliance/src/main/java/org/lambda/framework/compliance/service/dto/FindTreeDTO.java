@@ -11,4 +11,11 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class FindTreeDTO {
     private Long organizationId;
+    //从该节点开始加载,为空时从根节点开始
+    private Long rootId;
+    //向下加载的层数,0只返回起始节点,为空时不限制
+    //rootId和maxDepth都为空时返回整棵树
+    private Integer maxDepth;
+    //为true时标记最后一层节点有无子节点:没有子节点的childrens为空列表,有子节点但未加载的childrens为null
+    private Boolean hasChildren;
 }
@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.lambda.framework.repository.enums.PagingMode;
 
 @Data
 @Builder
@@ -13,4 +14,6 @@ public class PagingDTO<Condition> {
     private Long page;
     private Long size;
     private Condition Condition;
+    //总数计算方式,为空时精确计算
+    private PagingMode mode;
 }
@@ -1,32 +1,64 @@
 package org.lambda.framework.compliance.service.impl;
 
+import io.r2dbc.spi.ConnectionFactory;
 import jakarta.annotation.Resource;
 import org.lambda.framework.common.exception.EventException;
 import org.lambda.framework.compliance.repository.po.AbstractLoginUser;
 import org.lambda.framework.compliance.repository.po.UnifyPO;
+import org.lambda.framework.compliance.repository.po.UnifyVersionPO;
 import org.lambda.framework.compliance.service.IDefaultBasicService;
+import org.lambda.framework.repository.config.ReactiveMySqlRoutingConnectionFactory;
+import org.lambda.framework.repository.config.ReactiveMySqlShardingConnectionFactory;
+import org.lambda.framework.repository.config.ReactiveMySqlTracingConnectionFactory;
+import org.lambda.framework.repository.enums.PagingMode;
+import org.lambda.framework.repository.operation.Cursored;
 import org.lambda.framework.repository.operation.Paged;
+import org.lambda.framework.repository.operation.UnifyCursorOperation;
 import org.lambda.framework.repository.operation.UnifyPagingOperation;
+import org.lambda.framework.repository.operation.mysql.ReactiveMySqlBatchOperation;
+import org.lambda.framework.repository.operation.PagingCountCache;
+import org.lambda.framework.repository.operation.mysql.ReactiveMySqlCacheOperation;
 import org.lambda.framework.repository.operation.mysql.ReactiveMySqlCrudRepositoryOperation;
+import org.lambda.framework.repository.operation.mysql.ReactiveMySqlExampleOperation;
 import org.lambda.framework.security.SecurityPrincipalUtil;
 import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.GenericTypeResolver;
 import org.springframework.data.domain.Example;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Query;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
 import static org.lambda.framework.compliance.enums.ComplianceConstant.*;
 import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_000;
+import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.ES_COMPLIANCE_022;
 
+@SuppressWarnings("unchecked")
 public class DefaultBasicServiceImpl<PO extends UnifyPO,ID,Repository extends ReactiveMySqlCrudRepositoryOperation<PO,ID>>  implements IDefaultBasicService<PO,ID> {
 
 
     public DefaultBasicServiceImpl(@Autowired Repository repository){
         this.repository = repository;
+        Class<?>[] types = GenericTypeResolver.resolveTypeArguments(getClass(), DefaultBasicServiceImpl.class);
+        this.poClass = types == null ? null : (Class<PO>) types[0];
     }
 
+    //子类声明的PO类型,用于批量写入
+    private final Class<PO> poClass;
+
+    //批量写入时每条语句包含的行数
+    @Value("${lambda.repository.mysql.batch-size:500}")
+    protected Integer batchSize;
+
+    //流式查询时每次从服务端拉取的行数
+    @Value("${lambda.repository.mysql.fetch-size:1000}")
+    protected Integer fetchSize;
+
 
     protected Repository repository;
 
@@ -34,6 +66,17 @@ public class DefaultBasicServiceImpl<PO extends UnifyPO,ID,Repository extends Re
     @Resource
     private SecurityPrincipalUtil securityPrincipalUtil;
 
+    @Resource
+    protected R2dbcEntityTemplate r2dbcEntityTemplate;
+
+    //lambda.repository.cache.enable=true时存在
+    @Autowired(required = false)
+    protected ReactiveMySqlCacheOperation repositoryCacheOperation;
+
+    //PagingMode.ESTIMATED的总数缓存,写入时与查询缓存一起失效
+    @Autowired(required = false)
+    protected PagingCountCache pagingCountCache;
+
     public AbstractLoginUser getGuest(){
         AbstractLoginUser loginUser = new AbstractLoginUser();
         loginUser.setId(GUEST_LOGIN_USER_ID);
@@ -48,11 +91,12 @@ public class DefaultBasicServiceImpl<PO extends UnifyPO,ID,Repository extends Re
                 .onErrorReturn(getGuest())
                 .flatMap(e->{
                     if(po == null) return Mono.error(new EventException(ES_COMPLIANCE_000));
+                    checkVersion(po);
                     po.setUpdateTime(LocalDateTime.now());
                     po.setUpdaterId(e.getId());
                     po.setUpdaterName(e.getName());
                     return repository.save(po);
-                });
+                }).as(this::evict).as(e -> route(e, po));
     }
 
     @Override
@@ -69,7 +113,7 @@ public class DefaultBasicServiceImpl<PO extends UnifyPO,ID,Repository extends Re
                     po.setCreatorName(e.getName());
                     po.setUpdaterName(e.getName());
                     return repository.save(po);
-                });
+                }).as(this::evict).as(e -> route(e, po));
     }
 
     @Override
@@ -77,17 +121,17 @@ public class DefaultBasicServiceImpl<PO extends UnifyPO,ID,Repository extends Re
             return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
                 .onErrorReturn(getGuest())
                 .flatMapMany(e->{
-                    if(pos == null) return Mono.error(new EventException(ES_COMPLIANCE_000));
+                    if(pos == null) return Flux.error(new EventException(ES_COMPLIANCE_000));
                     LocalDateTime now = LocalDateTime.now();
-                    return Flux.from(pos).flatMap(po->{
+                    Flux<PO> _pos = Flux.from(pos).map(po->{
+                        checkVersion(po);
                         po.setUpdateTime(now);
                         po.setUpdaterId(e.getId());
                         po.setUpdaterName(e.getName());
-                        return Flux.just(po);
-                    }).collectList();
-                }).flatMap(e->{
-                    return repository.saveAll(e);
-                });
+                        return po;
+                    });
+                    return write(_pos,true);
+                }).as(this::evict);
     }
 
     @Override
@@ -95,76 +139,193 @@ public class DefaultBasicServiceImpl<PO extends UnifyPO,ID,Repository extends Re
         return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
                 .onErrorReturn(getGuest())
                 .flatMapMany(e->{
-                    if(pos == null) return Mono.error(new EventException(ES_COMPLIANCE_000));
+                    if(pos == null) return Flux.error(new EventException(ES_COMPLIANCE_000));
                     LocalDateTime now = LocalDateTime.now();
-                    return Flux.from(pos).flatMap(po->{
+                    Flux<PO> _pos = Flux.from(pos).map(po->{
                         po.setCreateTime(now);
                         po.setUpdateTime(now);
                         po.setCreatorId(e.getId());
                         po.setUpdaterId(e.getId());
                         po.setCreatorName(e.getName());
                         po.setUpdaterName(e.getName());
-                        return Flux.just(po);
-                    }).collectList();
-                }).flatMap(e->{
-                    return repository.saveAll(e);
-                });
+                        return po;
+                    });
+                    return write(_pos,false);
+                }).as(this::evict);
     }
 
     @Override
     public Mono<Void> delete(ID id) {
         if(id == null)throw new EventException(ES_COMPLIANCE_000);
-        return repository.deleteById(id);
+        return evict(repository.deleteById(id));
     }
 
     @Override
     public Mono<Void> delete(Publisher<ID> ids) {
         if(ids == null)throw new EventException(ES_COMPLIANCE_000);
-        return repository.deleteAllById(Flux.from(ids).toIterable());
+        return evict(repository.deleteAllById(Flux.from(ids).toIterable()));
     }
 
     @Override
     public Mono<Void> delete(Iterable<? extends PO> entities) {
         if(entities == null)throw new EventException(ES_COMPLIANCE_000);
-        return repository.deleteAll(entities);
+        ReactiveMySqlShardingConnectionFactory sharding = sharding();
+        if(sharding == null) return evict(repository.deleteAll(entities));
+        return evict(Flux.fromIterable(entities)
+                .groupBy(sharding::index)
+                .flatMap(group -> group.collectList().flatMap(e -> sharding.at(repository.deleteAll(e), group.key())))
+                .then());
     }
 
     @Override
     public Flux<PO> find(PO po) {
         if(po == null)throw new EventException(ES_COMPLIANCE_000);
         Example<PO> example = Example.<PO>of(po);
-        return repository.findAll(example);
+        if(cacheable()) return route(repositoryCacheOperation.list(poClass, "example." + repositoryCacheOperation.key(po),
+                () -> ReactiveMySqlRoutingConnectionFactory.readOnly(repository.findAll(example))), po);
+        return route(ReactiveMySqlRoutingConnectionFactory.readOnly(ReactiveMySqlExampleOperation.stream(r2dbcEntityTemplate, example, fetchSize)), po);
     }
 
     @Override
     public Flux<PO> find() {
-        return repository.findAll();
+        if(poClass == null) return ReactiveMySqlRoutingConnectionFactory.readOnly(repository.findAll());
+        return ReactiveMySqlRoutingConnectionFactory.readOnly(ReactiveMySqlExampleOperation.stream(r2dbcEntityTemplate, poClass, Query.empty(), fetchSize));
     }
 
     @Override
     public Mono<Paged<PO>> find(Long page, Long size, PO po) {
-        return repository.find(page,size,po,new UnifyPagingOperation<PO>() {
+        return this.find(page,size,po,PagingMode.EXACT);
+    }
+
+    @Override
+    public Mono<Paged<PO>> find(Long page, Long size, PO po, PagingMode mode) {
+        return route(ReactiveMySqlRoutingConnectionFactory.readOnly(repository.find(page,size,po,mode == null ? PagingMode.EXACT : mode,new UnifyPagingOperation<PO>() {
             @Override
             public Mono<Long> count() {
                 return repository.count(Example.of(po));
             }
             @Override
+            public Mono<Long> estimate() {
+                return pagingCountCache == null ? count() : pagingCountCache.get(poClass, po, count());
+            }
+            @Override
             public Flux<PO> query() {
                 return repository.findAll(Example.of(po));
             }
-        });
+            @Override
+            public Flux<PO> query(Long offset, Long limit) {
+                return ReactiveMySqlExampleOperation.find(r2dbcEntityTemplate, Example.of(po), offset, limit);
+            }
+        })), po);
+    }
+
+    @Override
+    public Mono<Cursored<PO>> find(String cursor, Long size, PO po) {
+        if(po == null)throw new EventException(ES_COMPLIANCE_000);
+        return route(ReactiveMySqlRoutingConnectionFactory.readOnly(repository.find(cursor,size,po,new UnifyCursorOperation<PO>() {
+            @Override
+            public Flux<PO> query(String after, Long limit) {
+                return ReactiveMySqlExampleOperation.seek(r2dbcEntityTemplate, Example.of(po), after, limit);
+            }
+            @Override
+            public String key(PO entity) {
+                return ReactiveMySqlExampleOperation.key(r2dbcEntityTemplate, entity);
+            }
+        })), po);
     }
 
     @Override
     public Mono<PO> get(ID id) {
         if(id == null)throw new EventException(ES_COMPLIANCE_000);
-        return repository.findById(id);
+        if(cacheable()) return repositoryCacheOperation.get(poClass, "id." + id,
+                () -> ReactiveMySqlRoutingConnectionFactory.readOnly(repository.findById(id)));
+        return ReactiveMySqlRoutingConnectionFactory.readOnly(repository.findById(id));
     }
 
     @Override
     public Mono<PO> get(PO po) {
         if(po == null)throw new EventException(ES_COMPLIANCE_000);
         Example<PO> example = Example.of(po);
-        return repository.findOne(example);
+        if(cacheable()) return route(repositoryCacheOperation.get(poClass, "one." + repositoryCacheOperation.key(po),
+                () -> ReactiveMySqlRoutingConnectionFactory.readOnly(repository.findOne(example))), po);
+        return route(ReactiveMySqlRoutingConnectionFactory.readOnly(repository.findOne(example)), po);
+    }
+
+    //版本号为空时save会当作新数据执行INSERT,更新前拒绝
+    private static void checkVersion(Object po) {
+        if(po instanceof UnifyVersionPO && ((UnifyVersionPO) po).getVersion() == null) throw new EventException(ES_COMPLIANCE_022);
+    }
+
+    //按分片分组写入,每个分片内按批次生成多行语句
+    private Flux<PO> write(Flux<PO> pos, boolean update) {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding();
+        if(sharding == null) return batch(pos, update);
+        return pos.groupBy(sharding::index).flatMap(group -> sharding.at(batch(group, update), group.key()));
+    }
+
+    private Flux<PO> batch(Flux<PO> pos, boolean update) {
+        //无法确定实体类型时退回saveAll
+        if(poClass == null) return repository.saveAll(pos);
+        boolean versioned = UnifyVersionPO.class.isAssignableFrom(poClass);
+        //批量UPDATE无法逐行校验版本号,带版本号的实体逐条更新
+        if(update && versioned) return repository.saveAll(pos);
+        if(update) return ReactiveMySqlBatchOperation.update(r2dbcEntityTemplate,poClass,pos,batchSize);
+        if(versioned) pos = pos.map(po -> {
+            if(((UnifyVersionPO) po).getVersion() == null) ((UnifyVersionPO) po).setVersion(0L);
+            return po;
+        });
+        return ReactiveMySqlBatchOperation.insert(r2dbcEntityTemplate,poClass,pos,batchSize);
+    }
+
+    //连接工厂启用了分片时返回分片连接工厂
+    protected ReactiveMySqlShardingConnectionFactory sharding() {
+        ConnectionFactory connectionFactory = ReactiveMySqlTracingConnectionFactory.unwrap(r2dbcEntityTemplate.getDatabaseClient().getConnectionFactory());
+        return connectionFactory instanceof ReactiveMySqlShardingConnectionFactory ? (ReactiveMySqlShardingConnectionFactory) connectionFactory : null;
+    }
+
+    //按实体的分片键路由;get(ID)、delete(ID)等无法从参数确定分片的调用,由调用方通过ReactiveMySqlShardingConnectionFactory.shard()指定
+    protected <T> Mono<T> route(Mono<T> mono, PO po) {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding();
+        return sharding == null ? mono : sharding.route(mono, po);
+    }
+
+    protected <T> Flux<T> route(Flux<T> flux, PO po) {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding();
+        return sharding == null ? flux : sharding.route(flux, po);
+    }
+
+    //显式的跨分片查询,在每个分片上执行后合并结果
+    protected <T> Flux<T> scatter(Supplier<? extends Flux<T>> query) {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding();
+        return sharding == null ? Flux.defer(query) : sharding.scatter(query);
+    }
+
+    //PO标记了@RepositoryCacheable并且开启了查询缓存
+    protected boolean cacheable() {
+        return repositoryCacheOperation != null && repositoryCacheOperation.cacheable(poClass);
+    }
+
+    //写入结束后推进缓存版本号,之前缓存的查询结果和分页总数全部失效
+    //写入失败或被取消时同样失效,批量写入中途失败时前面的批次可能已经提交
+    protected <T> Mono<T> evict(Mono<T> mono) {
+        if(!cacheable() && pagingCountCache == null) return mono;
+        Mono<Void> invalidate = Mono.defer(this::invalidate);
+        return mono.flatMap(e -> invalidate.thenReturn(e))
+                .switchIfEmpty(invalidate.then(Mono.empty()))
+                .onErrorResume(e -> invalidate.onErrorResume(ignore -> Mono.empty()).then(Mono.error(e)))
+                .doOnCancel(() -> invalidate.subscribe());
+    }
+
+    protected <T> Flux<T> evict(Flux<T> flux) {
+        if(!cacheable() && pagingCountCache == null) return flux;
+        Mono<Void> invalidate = Mono.defer(this::invalidate);
+        return flux.onErrorResume(e -> invalidate.onErrorResume(ignore -> Mono.empty()).then(Mono.error(e)))
+                .concatWith(invalidate.then(Mono.empty()))
+                .doOnCancel(() -> invalidate.subscribe());
+    }
+
+    private Mono<Void> invalidate() {
+        if(pagingCountCache != null) pagingCountCache.invalidate(poClass);
+        return cacheable() ? repositoryCacheOperation.invalidate(poClass) : Mono.empty();
     }
 }
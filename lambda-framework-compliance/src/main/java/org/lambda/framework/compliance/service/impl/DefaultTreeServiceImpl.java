@@ -1,23 +1,54 @@
 package org.lambda.framework.compliance.service.impl;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.compliance.cache.ComplianceTreeCache;
+import org.lambda.framework.compliance.factory.InstanceFactory;
+import org.lambda.framework.compliance.feed.ComplianceTreeFeed;
+import org.lambda.framework.compliance.repository.po.AbstractLoginUser;
 import org.lambda.framework.compliance.repository.po.IFlattenTreePO;
+import org.lambda.framework.compliance.repository.po.IMaterializedPathPO;
 import org.lambda.framework.compliance.repository.po.UnifyPO;
+import org.lambda.framework.compliance.repository.po.UnifyVersionPO;
 import org.lambda.framework.compliance.service.IDefaultTreeService;
 import org.lambda.framework.compliance.service.dto.*;
+import org.lambda.framework.repository.config.ReactiveMySqlRoutingConnectionFactory;
+import org.lambda.framework.repository.config.ReactiveMySqlShardingConnectionFactory;
 import org.lambda.framework.repository.operation.mysql.ReactiveMySqlCrudRepositoryOperation;
 import org.lambda.framework.security.SecurityPrincipalUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.ReactiveDataAccessStrategy;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.lambda.framework.compliance.enums.ComplianceConstant.ROOT_NODE_DEFAULT;
 import static org.lambda.framework.compliance.enums.ComplianceExceptionEnum.*;
@@ -29,6 +60,28 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
     @Resource
     private SecurityPrincipalUtil securityPrincipalUtil;
 
+    //lambda.compliance.tree-cache.enable=true时存在
+    @Autowired(required = false)
+    private ComplianceTreeCache complianceTreeCache;
+
+    //lambda.compliance.tree-feed.enable=true时存在
+    @Autowired(required = false)
+    private ComplianceTreeFeed complianceTreeFeed;
+
+    //与r2dbcEntityTemplate使用同一个连接工厂,注入完成后创建
+    private TransactionalOperator transactionalOperator;
+
+    //按查询条件的属性名缓存生成的语句,""表示只按机构号查询
+    private final Map<String, String> probes = new ConcurrentHashMap<>();
+
+    //乐观锁冲突时的最大重试次数
+    @Value("${lambda.compliance.tree.max-retry:10}")
+    private Integer maxRetry;
+
+    //按层加载时parentId IN (...)每条语句的最大id数,只用于读取,写入仍按lambda.repository.mysql.batch-size拆分
+    @Value("${lambda.compliance.tree.in-batch-size:1000}")
+    private Integer inBatchSize;
+
     public DefaultTreeServiceImpl(Repository repository) {
         super(repository);
         Type genericSuperclass = getClass().getGenericSuperclass();
@@ -45,41 +98,333 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
     }
 
 
-    //使用递归构建树
+    @PostConstruct
+    private void initTransactionalOperator() {
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(r2dbcEntityTemplate.getDatabaseClient().getConnectionFactory()));
+    }
+
+    //一次遍历按parentId建立索引,再从根节点逐层挂载子节点
     //使用po参数是为了校验机构号这个必要的参数
+    //启用树缓存时返回的节点与其他请求共享,不能修改
     public Mono<List<PO>> findTree(FindTreeDTO dto) {
         if(dto == null || dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
-        PO po = this.instance(clazz);
-        po.setOrganizationId(dto.getOrganizationId());
-        return super.find(po).collectList().flatMap(e->{
+        if(dto.getRootId() != null || dto.getMaxDepth() != null) return levels(dto);
+        Supplier<Mono<List<PO>>> loader = () -> organization(dto.getOrganizationId()).flatMap(e->{
             return Mono.just(process(e, ROOT_NODE_DEFAULT));
         });
+        if(complianceTreeCache == null) return loader.get();
+        return complianceTreeCache.get(clazz, dto.getOrganizationId(), loader);
     }
 
-    private List<PO> process(List<PO> flattenStream, Long parentId) {
-        List<PO> tree = new ArrayList<>();
-        flattenStream.forEach(po -> {
-            if (Objects.equals(parentId, po.getParentId())) {
-                po.setChildrens(process(flattenStream, po.getId()));
-                tree.add(po);
+    //按层加载,每层一条parentId IN (...)查询,查询次数只与层数有关,与节点数量无关
+    //最后一层节点的childrens为null表示未加载,展开时以该节点为rootId继续加载
+    private Mono<List<PO>> levels(FindTreeDTO dto) {
+        Long organizationId = dto.getOrganizationId();
+        int maxDepth = dto.getMaxDepth() == null || dto.getMaxDepth() < 0 ? Integer.MAX_VALUE : dto.getMaxDepth();
+        Mono<List<PO>> roots = dto.getRootId() == null
+                ? ReactiveMySqlRoutingConnectionFactory.readOnly(probe("parentId", ROOT_NODE_DEFAULT, organizationId)).collectList()
+                : node(dto.getRootId(), organizationId).map(e -> new ArrayList<>(Collections.singletonList(e)));
+        return roots.flatMap(tree -> level(tree, 0, maxDepth, Boolean.TRUE.equals(dto.getHasChildren()), organizationId).thenReturn(tree));
+    }
+
+    private Mono<Void> level(List<PO> nodes, int depth, int maxDepth, boolean hasChildren, Long organizationId) {
+        if(nodes.isEmpty()) return Mono.empty();
+        Map<Long, PO> index = new HashMap<>(Math.max(16, nodes.size() * 4 / 3 + 1));
+        for (PO node : nodes) index.put(node.getId(), node);
+        if(depth >= maxDepth){
+            for (PO node : nodes) node.setChildrens(null);
+            if(!hasChildren) return Mono.empty();
+            return parents(index.keySet(), organizationId).collect(Collectors.toSet()).doOnNext(parents -> {
+                for (PO node : nodes) {
+                    if(!parents.contains(node.getId())) node.setChildrens(new ArrayList<>());
+                }
+            }).then();
+        }
+        return children(index.keySet(), organizationId).collectList().flatMap(childrens -> {
+            for (PO node : nodes) node.setChildrens(new ArrayList<>());
+            for (PO child : childrens) {
+                PO parent = index.get(child.getParentId());
+                if(parent != null) parent.getChildrens().add(child);
             }
+            return level(childrens, depth + 1, maxDepth, hasChildren, organizationId);
+        });
+    }
+
+    //parentId IN (...)按批拆分,避免单条语句的参数过多
+    private Flux<PO> children(Collection<Long> ids, Long organizationId) {
+        return Flux.fromIterable(batches(ids, inBatchSize)).concatMap(batch -> {
+            Query query = Query.query(Criteria.where("organizationId").is(organizationId).and("parentId").in(batch));
+            return ReactiveMySqlRoutingConnectionFactory.readOnly(ReactiveMySqlShardingConnectionFactory.shard(r2dbcEntityTemplate.select(clazz).matching(query).all(), organizationId));
+        });
+    }
+
+    //ids中有子节点的节点,只查询parentId列
+    private Flux<Long> parents(Collection<Long> ids, Long organizationId) {
+        ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+        RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        String parentId = column(strategy, entity, "parentId");
+        String sql = "SELECT DISTINCT " + parentId + " FROM " + strategy.toSql(entity.getTableName())
+                + " WHERE " + column(strategy, entity, "organizationId") + " = :organizationId AND " + parentId + " IN (:ids)";
+        return Flux.fromIterable(batches(ids, inBatchSize)).concatMap(batch -> {
+            Flux<Long> flux = r2dbcEntityTemplate.getDatabaseClient().sql(sql)
+                    .bind("organizationId", organizationId)
+                    .bind("ids", batch)
+                    .map((row, metadata) -> row.get(0, Long.class))
+                    .all();
+            return ReactiveMySqlRoutingConnectionFactory.readOnly(ReactiveMySqlShardingConnectionFactory.shard(flux, organizationId));
         });
+    }
+
+    private static <T> List<List<T>> batches(Collection<T> ids, int size) {
+        List<List<T>> batches = new ArrayList<>();
+        List<T> batch = new ArrayList<>(Math.min(ids.size(), size));
+        for (T id : ids) {
+            if(batch.size() == size){
+                batches.add(batch);
+                batch = new ArrayList<>(Math.min(ids.size(), size));
+            }
+            batch.add(id);
+        }
+        if(!batch.isEmpty()) batches.add(batch);
+        return batches;
+    }
+
+    //树的写操作结束后使机构的树缓存失效,写入失败时也失效,因为部分更新可能已经提交
+    private Mono<Void> evictTree(Mono<Void> write, Long organizationId) {
+        if(complianceTreeCache == null) return write;
+        Mono<Void> invalidate = Mono.defer(() -> complianceTreeCache.invalidate(clazz, organizationId));
+        return write.then(invalidate).onErrorResume(e -> invalidate.then(Mono.error(e)));
+    }
+
+    //订阅机构树的增量,断线重连时带上最后收到的增量id
+    @Override
+    public Flux<ServerSentEvent<Map<String, Object>>> feedTree(FeedTreeDTO dto) {
+        if(dto == null || dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
+        if(complianceTreeFeed == null)throw new EventException(ES_COMPLIANCE_020);
+        return complianceTreeFeed.subscribe(clazz, dto.getOrganizationId(), dto.getLastEventId());
+    }
+
+    //写操作成功并使树缓存失效后再向机构的变更流发布增量,订阅方收到增量后重新查询时不会读到旧的缓存,写入失败时不发布
+    private Mono<Void> publish(Mono<Void> write, Long organizationId, Supplier<Map<String, Object>> delta) {
+        if(complianceTreeFeed == null) return write;
+        return write.then(Mono.defer(() -> complianceTreeFeed.publish(clazz, organizationId, delta.get())));
+    }
+
+    //节点及其向下depth层的子树,返回只包含该节点的列表
+    //实体实现IMaterializedPathPO时按路径前缀查询,否则或者路径尚未生成时,加载整个机构后在内存中截取
+    @Override
+    public Mono<List<PO>> findSubtree(FindSubtreeDTO dto) {
+        if(dto == null || dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
+        if(dto.getNodeId() == null)throw new EventException(ES_COMPLIANCE_011);
+        return node(dto.getNodeId(), dto.getOrganizationId()).flatMap(node -> {
+            if(!materialized() || ((IMaterializedPathPO) node).getPath() == null){
+                return organization(dto.getOrganizationId()).map(nodes -> {
+                    //从节点的父节点开始组装,节点自身的子树即为结果
+                    process(nodes, node.getParentId());
+                    PO root = nodes.stream().filter(e -> node.getId().equals(e.getId())).findFirst().orElse(node);
+                    return trim(root, dto.getDepth());
+                });
+            }
+            IMaterializedPathPO path = (IMaterializedPathPO) node;
+            Criteria criteria = Criteria.where("organizationId").is(dto.getOrganizationId()).and("path").like(path.getPath() + "%");
+            if(dto.getDepth() != null && dto.getDepth() >= 0 && path.getDepth() != null) criteria = criteria.and("depth").lessThanOrEquals(path.getDepth() + dto.getDepth());
+            return select(criteria, node).collectList().map(nodes -> process(nodes, node.getParentId()));
+        });
+    }
+
+    //从根节点到当前节点的路径,包含当前节点
+    @Override
+    public Mono<List<PO>> findAncestors(FindAncestorsDTO dto) {
+        if(dto == null || dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
+        if(dto.getNodeId() == null)throw new EventException(ES_COMPLIANCE_011);
+        return node(dto.getNodeId(), dto.getOrganizationId()).flatMap(node -> {
+            if(!materialized() || ((IMaterializedPathPO) node).getPath() == null){
+                return organization(dto.getOrganizationId()).map(nodes -> {
+                    Map<Long, PO> index = new HashMap<>(Math.max(16, nodes.size() * 4 / 3 + 1));
+                    for (PO e : nodes) index.put(e.getId(), e);
+                    List<PO> ancestors = new ArrayList<>();
+                    PO current = index.getOrDefault(node.getId(), node);
+                    //数据中存在环时最多走完整个机构
+                    while (current != null && ancestors.size() <= nodes.size()) {
+                        ancestors.add(current);
+                        current = ROOT_NODE_DEFAULT.equals(current.getParentId()) ? null : index.get(current.getParentId());
+                    }
+                    Collections.reverse(ancestors);
+                    return ancestors;
+                });
+            }
+            IMaterializedPathPO path = (IMaterializedPathPO) node;
+            List<Long> ids = new ArrayList<>();
+            for (String id : path.getPath().split("/")) {
+                if(!id.isEmpty()) ids.add(Long.valueOf(id));
+            }
+            Criteria criteria = Criteria.where("organizationId").is(dto.getOrganizationId()).and("id").in(ids);
+            return select(criteria, node).collectList();
+        });
+    }
+
+    private boolean materialized() {
+        return IMaterializedPathPO.class.isAssignableFrom(clazz);
+    }
+
+    private Mono<PO> node(Long nodeId, Long organizationId) {
+        return ReactiveMySqlRoutingConnectionFactory.readOnly(probe("id", nodeId, organizationId)).next()
+                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_006)));
+    }
+
+    private Mono<List<PO>> organization(Long organizationId) {
+        return ReactiveMySqlRoutingConnectionFactory.readOnly(probe(null, null, organizationId)).collectList();
+    }
+
+    //树的查询条件只有机构号加上id或parentId,每种条件的语句按实体类生成一次后复用,不再为查询构造PO实例和Example
+    //property为null时只按机构号查询,按机构号路由到所在分片
+    private Flux<PO> probe(String property, Long value, Long organizationId) {
+        String sql = probes.computeIfAbsent(property == null ? "" : property, key -> {
+            ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+            RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+            return "SELECT * FROM " + strategy.toSql(entity.getTableName()) + " WHERE " + column(strategy, entity, "organizationId") + " = ?"
+                    + (key.isEmpty() ? "" : " AND " + column(strategy, entity, key) + " = ?");
+        });
+        DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(sql).bind(0, organizationId);
+        if(property != null) spec = spec.bind(1, value);
+        Flux<PO> flux = spec.map((row, metadata) -> r2dbcEntityTemplate.getConverter().read(clazz, row, metadata)).all();
+        return ReactiveMySqlShardingConnectionFactory.shard(flux, organizationId);
+    }
+
+    //按depth升序返回,祖先查询即从根到当前节点的顺序
+    private Flux<PO> select(Criteria criteria, PO po) {
+        Query query = Query.query(criteria).sort(Sort.by("depth"));
+        return ReactiveMySqlRoutingConnectionFactory.readOnly(route(r2dbcEntityTemplate.select(clazz).matching(query).all(), po));
+    }
+
+    //截掉depth层以下的子节点
+    private List<PO> trim(PO root, Integer depth) {
+        List<PO> tree = new ArrayList<>(Collections.singletonList(root));
+        if(depth == null || depth < 0) return tree;
+        Deque<PO> queue = new ArrayDeque<>(tree);
+        Deque<Integer> levels = new ArrayDeque<>(Collections.singletonList(0));
+        while (!queue.isEmpty()) {
+            PO node = queue.poll();
+            int level = levels.poll();
+            if(node.getChildrens() == null) continue;
+            if(level >= depth){
+                node.setChildrens(new ArrayList<>());
+                continue;
+            }
+            for (Object child : node.getChildrens()) {
+                queue.add((PO) child);
+                levels.add(level + 1);
+            }
+        }
         return tree;
     }
 
+    //新节点的路径为父节点路径加上自身id,父节点路径缺失时重新计算整个机构
+    private Mono<PO> path(PO node, PO parent) {
+        if(!materialized()) return Mono.just(node);
+        IMaterializedPathPO path = (IMaterializedPathPO) node;
+        if(parent == null){
+            path.setPath("/" + node.getId() + "/");
+            path.setDepth(0);
+            return updatePaths(Collections.singletonList(node), node.getOrganizationId()).thenReturn(node);
+        }
+        IMaterializedPathPO parentPath = (IMaterializedPathPO) parent;
+        if(parentPath.getPath() == null || parentPath.getDepth() == null) return repath(node.getOrganizationId()).thenReturn(node);
+        path.setPath(parentPath.getPath() + node.getId() + "/");
+        path.setDepth(parentPath.getDepth() + 1);
+        return updatePaths(Collections.singletonList(node), node.getOrganizationId()).thenReturn(node);
+    }
 
-    public PO instance(Class<PO> clazz){
-        try {
-            return clazz.getDeclaredConstructor().newInstance();
-        } catch (InstantiationException e) {
-            throw new EventException(ES_COMPLIANCE_014);
-        } catch (IllegalAccessException e) {
-            throw new EventException(ES_COMPLIANCE_014);
-        } catch (InvocationTargetException e) {
-            throw new EventException(ES_COMPLIANCE_014);
-        } catch (NoSuchMethodException e) {
-            throw new EventException(ES_COMPLIANCE_014);
+    //移动、删除节点会改变大量节点的路径,重新计算整个机构的路径,只写回发生变化节点的path和depth
+    //必须在写操作的同一个事务中调用:从主库读取,读到的是本事务已修改的父子关系,不会用从库的旧数据覆盖
+    private Mono<Void> repath(Long organizationId) {
+        if(!materialized()) return Mono.empty();
+        return probe(null, null, organizationId).collectList().flatMap(nodes -> {
+            List<PO> changed = new ArrayList<>();
+            Deque<PO> queue = new ArrayDeque<>();
+            for (PO root : process(nodes, ROOT_NODE_DEFAULT)) {
+                if(repath(root, "/" + root.getId() + "/", 0)) changed.add(root);
+                queue.add(root);
+            }
+            while (!queue.isEmpty()) {
+                PO node = queue.poll();
+                IMaterializedPathPO parent = (IMaterializedPathPO) node;
+                for (Object e : node.getChildrens()) {
+                    PO child = (PO) e;
+                    if(repath(child, parent.getPath() + child.getId() + "/", parent.getDepth() + 1)) changed.add(child);
+                    queue.add(child);
+                }
+            }
+            return updatePaths(changed, organizationId);
+        });
+    }
+
+    //按批执行 UPDATE ... SET path = CASE id ... END, depth = CASE id ... END WHERE id IN (...),只修改路径列,不写回整行
+    private Mono<Void> updatePaths(List<PO> nodes, Long organizationId) {
+        if(nodes.isEmpty()) return Mono.empty();
+        ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+        RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        String id = column(strategy, entity, "id");
+        String path = column(strategy, entity, "path");
+        String depth = column(strategy, entity, "depth");
+        return Flux.fromIterable(batches(nodes, batchSize)).concatMap(batch -> {
+            StringBuilder sql = new StringBuilder("UPDATE ").append(strategy.toSql(entity.getTableName()))
+                    .append(" SET ").append(path).append(" = CASE ").append(id);
+            for (int i = 0; i < batch.size(); i++) sql.append(" WHEN ? THEN ?");
+            sql.append(" END, ").append(depth).append(" = CASE ").append(id);
+            for (int i = 0; i < batch.size(); i++) sql.append(" WHEN ? THEN ?");
+            sql.append(" END").append(version(strategy, entity));
+            sql.append(" WHERE ").append(column(strategy, entity, "organizationId")).append(" = ? AND ").append(id).append(" IN (");
+            for (int i = 0; i < batch.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(')');
+            DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(sql.toString());
+            int index = 0;
+            for (PO node : batch) {
+                spec = spec.bind(index++, node.getId()).bind(index++, ((IMaterializedPathPO) node).getPath());
+            }
+            for (PO node : batch) {
+                spec = spec.bind(index++, node.getId()).bind(index++, ((IMaterializedPathPO) node).getDepth());
+            }
+            spec = spec.bind(index++, organizationId);
+            for (PO node : batch) {
+                spec = spec.bind(index++, node.getId());
+            }
+            return spec.fetch().rowsUpdated();
+        }).then();
+    }
+
+    private static boolean repath(IFlattenTreePO node, String path, Integer depth) {
+        IMaterializedPathPO e = (IMaterializedPathPO) node;
+        if(path.equals(e.getPath()) && depth.equals(e.getDepth())) return false;
+        e.setPath(path);
+        e.setDepth(depth);
+        return true;
+    }
+
+    //时间复杂度O(n),使用队列代替递归,层级再深也不会栈溢出
+    //同级节点保持查询结果中的先后顺序
+    protected List<PO> process(List<PO> flattenStream, Long parentId) {
+        Map<Long, List<PO>> index = new HashMap<>(Math.max(16, flattenStream.size() * 4 / 3 + 1));
+        for (PO po : flattenStream) {
+            index.computeIfAbsent(po.getParentId(), key -> new ArrayList<>()).add(po);
+        }
+        List<PO> tree = index.remove(parentId);
+        if (tree == null) tree = new ArrayList<>();
+        Deque<PO> queue = new ArrayDeque<>(tree);
+        while (!queue.isEmpty()) {
+            PO node = queue.poll();
+            //每个节点只出现在其parentId对应的列表中,取出后移除,数据中存在环时也只会挂载一次
+            List<PO> childrens = index.remove(node.getId());
+            if (childrens == null) childrens = new ArrayList<>();
+            node.setChildrens(childrens);
+            queue.addAll(childrens);
         }
+        return tree;
+    }
+
+
+    public PO instance(Class<PO> clazz){
+        return InstanceFactory.instance(clazz);
     };
 
 
@@ -106,17 +451,15 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
           以上测试全部通过
 
           全部有关节点查询都需要带上机构id
-          全部的更新都是用批处理
+          全部的更新都是按条件的批量UPDATE,在同一个事务中执行,往返次数与子节点数量无关
+          同一机构的结构修改先锁住根节点再执行,并发移动不会遗漏路径的更新
          */
     public Mono<Void> moveNode(MoveNodeDTO dto) {
         if(dto.getTargetNodeId() == null || dto.getTargetNodeId().longValue() < ROOT_NODE_DEFAULT)throw new EventException(ES_COMPLIANCE_010);
         if(dto.getCurrentNodeId() == null)throw new EventException(ES_COMPLIANCE_011);
         if(dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
-        PO _currentNode =  instance(clazz);
-        _currentNode.setId(dto.getCurrentNodeId());
-        _currentNode.setOrganizationId(dto.getOrganizationId());
         //校验
-        return super.get(_currentNode)
+        return retry(() -> current(dto.getCurrentNodeId(), dto.getOrganizationId())
                 .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_006)))
                 .flatMap(e -> {
                     if (e.getParentId().equals(ROOT_NODE_DEFAULT)) {
@@ -127,52 +470,218 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
                 .flatMap(e -> {
                     //代表着，将当前节点变为root节点
                     if (dto.getTargetNodeId().equals(ROOT_NODE_DEFAULT)) {
-                        PO _current =  instance(clazz);
-                        _current.setId(e.getParentId());
-                        _current.setOrganizationId(dto.getOrganizationId());
-                        return super.find(_current).flatMap(root -> {
-                            //先记录之前的parentId,用来改变原先的子节点的挂靠
-                            Long oldParentId = e.getParentId();
-                            //将当前节点变成根节点
-                            e.setParentId(ROOT_NODE_DEFAULT);
-                            //查出当前变动节点的子孙节点
-                            PO _children = instance(clazz);
-                            _children.setParentId(e.getId());
-                            _children.setOrganizationId(dto.getOrganizationId());
-                            Flux<PO> currentChildren = super.find(_children)
-                                    .flatMap(x->{
-                                        x.setParentId(oldParentId);
-                                        return Flux.just(x);
-                                    });
-                            Flux<PO> currentChildrenUpdate = super.update(currentChildren);
-                            Mono<Void> currentSelfUpdate = super.update(e).then();
-                            root.setParentId(e.getId());
-                            Mono<Void> rootSelfUpdate =  super.update(root).then();
-                            //concat用于顺序执行流，不会造成脏读
-                            return Flux.concat(currentChildrenUpdate, rootSelfUpdate, currentSelfUpdate).then();
-                        }).then();
+                        //原父节点不存在时不能变为根节点,否则会静默成功并发布移动的增量
+                        return current(e.getParentId(), dto.getOrganizationId())
+                                .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_015)))
+                                .flatMap(parent -> principal().flatMap(user -> {
+                                //先将当前节点的子节点挂靠到原父节点,再将原父节点挂靠到当前节点,最后将当前节点变成根节点
+                                //where条件互不重叠,语句的先后顺序不会造成脏读
+                                Mono<Long> statements = touch(e).then(touch(parent))
+                                        .then(updateParent("parentId", e, e.getParentId(), user))
+                                        .then(updateParent("id", parent, e.getId(), user))
+                                        .then(updateParent("id", e, ROOT_NODE_DEFAULT, user))
+                                        .then(pathToRoot(e, user))
+                                        .then(pathMissing(e) ? repath(dto.getOrganizationId()).thenReturn(0L) : Mono.empty());
+                                return transactional(statements, dto.getOrganizationId());
+                            }));
                     }
-                    PO _target =  instance(clazz);
-                    _target.setId(dto.getTargetNodeId());
-                    _target.setOrganizationId(dto.getOrganizationId());
-                    return super.get(_target)
+                    return current(dto.getTargetNodeId(), dto.getOrganizationId())
                             .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_007)))
-                            .then(Mono.just(e)).flatMap(x->{
-                                Long oldParentId = x.getParentId();
-                                x.setParentId(dto.getTargetNodeId());
-                                Mono<Void> currentSelfUpdate = super.update(x).then();
-                                PO  _children = instance(clazz);
-                                _children.setParentId(x.getId());
-                                _children.setOrganizationId(dto.getOrganizationId());
-                                Flux<PO> currentChildren = super.find(_children)
-                                        .flatMap(y->{
-                                            y.setParentId(oldParentId);
-                                            return Flux.just(y);
-                                        });
-                                Mono<Void> currentChildrenUpdate = super.update(currentChildren).then();
-                                return Flux.concat(currentChildrenUpdate,currentSelfUpdate).then();
-                            });
-                });
+                            .flatMap(target -> principal().flatMap(user -> {
+                                //当前节点的子节点挂靠到原父节点,当前节点挂靠到目标节点
+                                Mono<Long> statements = touch(e).then(touch(target))
+                                        .then(updateParent("parentId", e, e.getParentId(), user))
+                                        .then(updateParent("id", e, target.getId(), user))
+                                        .then(pathToTarget(e, target, user))
+                                        .then(pathMissing(e) || pathMissing(target) ? repath(dto.getOrganizationId()).thenReturn(0L) : Mono.empty());
+                                return transactional(statements, dto.getOrganizationId());
+                            }));
+                }).then())
+                .as(e -> evictTree(e, dto.getOrganizationId()))
+                .as(e -> publish(e, dto.getOrganizationId(), () -> ComplianceTreeFeed.delta(ComplianceTreeFeed.MOVE, dto.getCurrentNodeId(), null, dto.getTargetNodeId(), null)));
+    }
+
+    private Mono<AbstractLoginUser> principal() {
+        return securityPrincipalUtil.getPrincipal2Object(AbstractLoginUser.class)
+                .onErrorReturn(getGuest())
+                .defaultIfEmpty(getGuest());
+    }
+
+    //同一个事务中执行,分片时按机构路由到同一分片,提交后使查询缓存失效
+    //事务先锁住机构的根节点,同一机构的结构修改串行执行
+    private Mono<Void> transactional(Mono<?> statements, Long organizationId) {
+        return ReactiveMySqlShardingConnectionFactory.shard(evict(transactionalOperator.transactional(lock(organizationId).then(statements.then()))), organizationId);
+    }
+
+    //路径按 LIKE 前缀批量修改,版本号只能校验读取过的节点,并发事务移入前缀范围的节点不在语句的匹配结果中,路径会遗漏更新
+    //锁住根节点后其他结构修改在此等待,之后校验版本号的节点都是已提交的最新状态,读取之后被修改过的节点仍按乐观锁冲突重试
+    private Mono<Void> lock(Long organizationId) {
+        ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+        RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        String sql = "SELECT " + column(strategy, entity, "id") + " FROM " + strategy.toSql(entity.getTableName())
+                + " WHERE " + column(strategy, entity, "organizationId") + " = ? AND " + column(strategy, entity, "parentId") + " = ? FOR UPDATE";
+        return r2dbcEntityTemplate.getDatabaseClient().sql(sql)
+                .bind(0, organizationId)
+                .bind(1, ROOT_NODE_DEFAULT)
+                .fetch().all().then();
+    }
+
+    private Criteria idIs(PO po) {
+        return Criteria.where("organizationId").is(po.getOrganizationId()).and("id").is(po.getId());
+    }
+
+    //乐观锁冲突时重新读取并执行整个操作,超过次数后提示调用方重试
+    private Mono<Void> retry(Supplier<Mono<Void>> operation) {
+        return Mono.defer(operation)
+                .retryWhen(Retry.backoff(maxRetry, Duration.ofMillis(10))
+                        .maxBackoff(Duration.ofMillis(500))
+                        .filter(e -> e instanceof OptimisticLockingFailureException)
+                        .onRetryExhaustedThrow((spec, signal) -> new EventException(ES_COMPLIANCE_019)));
+    }
+
+    //树的写操作依据的节点从主库读取,不经过从库和查询缓存
+    private Mono<PO> current(Long nodeId, Long organizationId) {
+        return probe("id", nodeId, organizationId).next();
+    }
+
+    private boolean versioned() {
+        return UnifyVersionPO.class.isAssignableFrom(clazz);
+    }
+
+    //校验并递增节点的版本号,版本号不一致说明节点在读取之后被其他操作修改过,整个事务回滚
+    private Mono<Long> touch(PO node) {
+        if(!versioned()) return Mono.just(0L);
+        Long version = ((UnifyVersionPO) node).getVersion();
+        ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+        RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        String column = column(strategy, entity, "version");
+        String sql = "UPDATE " + strategy.toSql(entity.getTableName()) + " SET " + column + " = " + column + " + 1"
+                + " WHERE " + column(strategy, entity, "organizationId") + " = ? AND " + column(strategy, entity, "id") + " = ? AND " + column + (version == null ? " IS NULL" : " = ?");
+        DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(sql)
+                .bind(0, node.getOrganizationId())
+                .bind(1, node.getId());
+        if(version != null) spec = spec.bind(2, version);
+        return spec.fetch().rowsUpdated().flatMap(rows -> {
+            if(rows == 0) return Mono.error(new OptimisticLockingFailureException("node " + node.getId() + " version " + version + " is stale"));
+            return Mono.just(rows);
+        });
+    }
+
+    //一条UPDATE修改所有property等于node.id的节点的parentId,审计字段和版本号在同一条语句中写入
+    private Mono<Long> updateParent(String property, PO node, Long parentId, AbstractLoginUser user) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("parentId", parentId);
+        return updateNodes(values, property, node, user);
+    }
+
+    private Mono<Long> updateNodes(Map<String, Object> values, String property, PO node, AbstractLoginUser user) {
+        ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+        RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        values.put("updateTime", LocalDateTime.now());
+        values.put("updaterId", user.getId());
+        values.put("updaterName", user.getName());
+        StringBuilder sql = new StringBuilder("UPDATE ").append(strategy.toSql(entity.getTableName())).append(" SET ");
+        for (String key : values.keySet()) {
+            sql.append(column(strategy, entity, key)).append(" = ?, ");
+        }
+        sql.setLength(sql.length() - 2);
+        sql.append(version(strategy, entity));
+        sql.append(" WHERE ").append(column(strategy, entity, "organizationId")).append(" = ? AND ").append(column(strategy, entity, property)).append(" = ?");
+        DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(sql.toString());
+        int index = 0;
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            spec = value.getValue() == null ? spec.bindNull(index, entity.getRequiredPersistentProperty(value.getKey()).getType()) : spec.bind(index, value.getValue());
+            index++;
+        }
+        return spec.bind(index, node.getOrganizationId()).bind(index + 1, node.getId()).fetch().rowsUpdated();
+    }
+
+    //带版本号的实体,批量修改的节点同样递增版本号,使并发读取到这些节点的操作失败重试
+    private String version(ReactiveDataAccessStrategy strategy, RelationalPersistentEntity<?> entity) {
+        if(!versioned()) return "";
+        String column = column(strategy, entity, "version");
+        return ", " + column + " = " + column + " + 1";
+    }
+
+    private boolean pathMissing(PO po) {
+        if(!materialized()) return false;
+        IMaterializedPathPO path = (IMaterializedPathPO) po;
+        return path.getPath() == null || path.getDepth() == null;
+    }
+
+    // /a/b/c/ 的父路径为 /a/b/, 根节点的父路径为 /
+    private static String parentPath(String path) {
+        return path.substring(0, path.lastIndexOf('/', path.length() - 2) + 1);
+    }
+
+    //当前节点挂靠到目标节点,其子孙节点上移一级
+    private Mono<Long> pathToTarget(PO current, PO target, AbstractLoginUser user) {
+        if(pathMissing(current) || pathMissing(target)) return Mono.empty();
+        String path = ((IMaterializedPathPO) current).getPath();
+        String parentPath = parentPath(path);
+        Mono<Long> descendants = updatePath(current, path, null, parentPath, path.length(), -1, user);
+        //目标节点在当前节点的子树中时,目标的路径也随之上移
+        IMaterializedPathPO _target = (IMaterializedPathPO) target;
+        boolean inside = _target.getPath().startsWith(path);
+        String targetPath = inside ? parentPath + _target.getPath().substring(path.length()) : _target.getPath();
+        int targetDepth = inside ? _target.getDepth() - 1 : _target.getDepth();
+        return descendants.then(updateSelfPath(current, targetPath + current.getId() + "/", targetDepth + 1, user));
+    }
+
+    //当前节点变为根节点,原父节点挂靠到当前节点,当前节点的子孙节点挂靠到原父节点
+    private Mono<Long> pathToRoot(PO current, AbstractLoginUser user) {
+        if(pathMissing(current)) return Mono.empty();
+        IMaterializedPathPO _current = (IMaterializedPathPO) current;
+        String path = _current.getPath();
+        String parentPath = parentPath(path);
+        String grandPath = parentPath(parentPath);
+        String rootPath = "/" + current.getId() + "/";
+        //原父节点子树中除当前节点子树以外的节点
+        Mono<Long> parentTree = updatePath(current, parentPath, path, rootPath, grandPath.length(), 1 - (_current.getDepth() - 1), user);
+        Mono<Long> descendants = updatePath(current, path, null, rootPath + parentPath.substring(grandPath.length()), path.length(), 1 - _current.getDepth(), user);
+        return parentTree.then(descendants).then(updateSelfPath(current, rootPath, 0, user));
+    }
+
+    //当前节点被删除,其子孙节点上移一级
+    private Mono<Long> pathToParent(PO current, AbstractLoginUser user) {
+        if(pathMissing(current)) return Mono.empty();
+        String path = ((IMaterializedPathPO) current).getPath();
+        return updatePath(current, path, null, parentPath(path), path.length(), -1, user);
+    }
+
+    private Mono<Long> updateSelfPath(PO current, String path, Integer depth, AbstractLoginUser user) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("path", path);
+        values.put("depth", depth);
+        return updateNodes(values, "id", current, user);
+    }
+
+    //路径以like开头(不以notLike开头)的节点,去掉路径的前cut个字符后拼接prefix,层级加上delta,不包含当前节点
+    private Mono<Long> updatePath(PO current, String like, String notLike, String prefix, int cut, int delta, AbstractLoginUser user) {
+        ReactiveDataAccessStrategy strategy = r2dbcEntityTemplate.getDataAccessStrategy();
+        RelationalPersistentEntity<?> entity = r2dbcEntityTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        String path = column(strategy, entity, "path");
+        String depth = column(strategy, entity, "depth");
+        String sql = "UPDATE " + strategy.toSql(entity.getTableName())
+                + " SET " + path + " = CONCAT(?, SUBSTRING(" + path + ", ?)), " + depth + " = " + depth + " + ?, "
+                + column(strategy, entity, "updateTime") + " = ?, " + column(strategy, entity, "updaterId") + " = ?, " + column(strategy, entity, "updaterName") + " = ?"
+                + version(strategy, entity)
+                + " WHERE " + column(strategy, entity, "organizationId") + " = ? AND " + path + " LIKE ? AND " + column(strategy, entity, "id") + " <> ?"
+                + (notLike == null ? "" : " AND " + path + " NOT LIKE ?");
+        DatabaseClient.GenericExecuteSpec spec = r2dbcEntityTemplate.getDatabaseClient().sql(sql)
+                .bind(0, prefix)
+                .bind(1, cut + 1)
+                .bind(2, delta)
+                .bind(3, LocalDateTime.now());
+        spec = user.getId() == null ? spec.bindNull(4, Long.class) : spec.bind(4, user.getId());
+        spec = user.getName() == null ? spec.bindNull(5, String.class) : spec.bind(5, user.getName());
+        spec = spec.bind(6, current.getOrganizationId()).bind(7, like + "%").bind(8, current.getId());
+        if(notLike != null) spec = spec.bind(9, notLike + "%");
+        return spec.fetch().rowsUpdated();
+    }
+
+    private static String column(ReactiveDataAccessStrategy strategy, RelationalPersistentEntity<?> entity, String property) {
+        return strategy.toSql(entity.getRequiredPersistentProperty(property).getColumnName());
     }
 
     @Override
@@ -180,16 +689,16 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
         if(dto == null || dto.getNode() == null)throw new EventException(ES_COMPLIANCE_001);
         if(dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
         //要创建一个根节点,先检查之前有无根节点
-        PO po = instance(clazz);
-        po.setOrganizationId(dto.getOrganizationId());
         //有数据则表示已经存在根节点了，不能创建根节点
-        return super.find(po).hasElements().flatMap(e->{
+        return probe(null, null, dto.getOrganizationId()).hasElements().flatMap(e->{
                     if(e)return Mono.error(new EventException(ES_COMPLIANCE_003));
                     //设置项
                     dto.getNode().setParentId(ROOT_NODE_DEFAULT);
                     dto.getNode().setOrganizationId(dto.getOrganizationId());
-                    return super.insert(dto.getNode());
-                }).then();
+                    return super.insert(dto.getNode()).flatMap(node -> path(node, null));
+                }).then()
+                .as(e -> evictTree(e, dto.getOrganizationId()))
+                .as(e -> publish(e, dto.getOrganizationId(), () -> ComplianceTreeFeed.delta(ComplianceTreeFeed.BUILD, dto.getNode().getId(), ROOT_NODE_DEFAULT, null, dto.getNode())));
     }
 
     @Override
@@ -198,17 +707,21 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
         if(dto.getTargetNodeId() == null || dto.getTargetNodeId().longValue() < ROOT_NODE_DEFAULT)throw new EventException(ES_COMPLIANCE_010);
         if(dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
         //先检查 targetNodeId 代表的节点有无存在
-        PO po = instance(clazz);
-        po.setId(dto.getTargetNodeId());
-        po.setOrganizationId(dto.getOrganizationId());
-        return super.find(po)
+        Long nodeId = dto.getNode().getId();
+        return retry(() -> current(dto.getTargetNodeId(), dto.getOrganizationId())
                 .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_007)))
                 .flatMap(e->{
                     //设置目标节点为父节点
                     dto.getNode().setParentId(e.getId());
                     dto.getNode().setOrganizationId(e.getOrganizationId());
-                    return super.insert(dto.getNode());
-                }).then();
+                    //重试时恢复为未写入的状态
+                    dto.getNode().setId(nodeId);
+                    if(versioned()) ((UnifyVersionPO) dto.getNode()).setVersion(null);
+                    //递增父节点的版本号,与删除、移动父节点的操作互斥,避免产生孤儿节点
+                    return transactional(touch(e).then(super.insert(dto.getNode())).flatMap(node -> path(node, e)), dto.getOrganizationId());
+                }).then())
+                .as(e -> evictTree(e, dto.getOrganizationId()))
+                .as(e -> publish(e, dto.getOrganizationId(), () -> ComplianceTreeFeed.delta(ComplianceTreeFeed.BUILD, dto.getNode().getId(), dto.getTargetNodeId(), null, dto.getNode())));
     }
 
     @Override
@@ -216,11 +729,8 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
         if(dto == null || dto.getNode() == null)throw new EventException(ES_COMPLIANCE_001);
         if(dto.getTargetNodeId() == null || dto.getTargetNodeId().longValue() < ROOT_NODE_DEFAULT)throw new EventException(ES_COMPLIANCE_010);
         if(dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
-        PO po = instance(clazz);
-        po.setId(dto.getTargetNodeId());
-        po.setOrganizationId(dto.getOrganizationId());
         //先检查当前节点是否存在
-        return super.find(po)
+        return current(dto.getTargetNodeId(), dto.getOrganizationId())
                  //不存在则抛出异常
                 .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_007)))
                 .flatMap(e->{
@@ -236,9 +746,21 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
                     dto.getNode().setUpdaterName(e.getUpdaterName());
                     dto.getNode().setCreateTime(e.getCreateTime());
                     dto.getNode().setUpdateTime(e.getUpdateTime());
-
+                    //路径由树服务维护,不允许通过修改节点改变
+                    if(materialized()){
+                        ((IMaterializedPathPO) dto.getNode()).setPath(((IMaterializedPathPO) e).getPath());
+                        ((IMaterializedPathPO) dto.getNode()).setDepth(((IMaterializedPathPO) e).getDepth());
+                    }
+                    //调用方没有带版本号时以当前版本为准,带了则校验调用方读取之后节点有无被修改
+                    if(versioned() && ((UnifyVersionPO) dto.getNode()).getVersion() == null){
+                        ((UnifyVersionPO) dto.getNode()).setVersion(((UnifyVersionPO) e).getVersion());
+                    }
                     return super.update(dto.getNode());
-                }).then();
+                })
+                .onErrorMap(OptimisticLockingFailureException.class, e -> new EventException(ES_COMPLIANCE_019))
+                .then()
+                .as(e -> evictTree(e, dto.getOrganizationId()))
+                .as(e -> publish(e, dto.getOrganizationId(), () -> ComplianceTreeFeed.delta(ComplianceTreeFeed.EDIT, dto.getTargetNodeId(), null, null, dto.getNode())));
     }
     @Override
     public Mono<Void> removeNode(RemoveNodeDTO dto) {
@@ -246,46 +768,31 @@ public class DefaultTreeServiceImpl<PO extends UnifyPO & IFlattenTreePO,ID,Repos
         if(dto.getTargetNodeId() == null || dto.getTargetNodeId().longValue() < ROOT_NODE_DEFAULT)throw new EventException(ES_COMPLIANCE_010);
         if(dto.getOrganizationId() == null)throw new EventException(ES_COMPLIANCE_013);
         //先判断是不是根节点，根节点不允许删除
-        PO po = instance(clazz);
-        po.setId(dto.getTargetNodeId());
-        po.setOrganizationId(dto.getOrganizationId());
-        return super.find(po)
+        return retry(() -> current(dto.getTargetNodeId(), dto.getOrganizationId())
                 //不存在则抛出异常
                 .switchIfEmpty(Mono.error(new EventException(ES_COMPLIANCE_007)))
                 .flatMap(e->{
                     //存在则判断是否为根节点
                     if(ROOT_NODE_DEFAULT.equals(e.getParentId())){
                      //根节点要先判断他有无子节点，才能删除
-                        PO _rootChildren = instance(clazz);
-                        _rootChildren.setParentId(e.getId());
-                        _rootChildren.setOrganizationId(e.getOrganizationId());
-                        return super.find(_rootChildren).hasElements().flatMap(hasChildren->{
+                        return probe("parentId", e.getId(), e.getOrganizationId()).hasElements().flatMap(hasChildren->{
                             //有子节点，不让删除
                             if(hasChildren)return Mono.error(new EventException(ES_COMPLIANCE_016));
                             //没有可以删除
-                            PO _rootDelete = instance(clazz);
-                            _rootDelete.setId(e.getId());
-                            _rootDelete.setOrganizationId(e.getOrganizationId());
-                            Iterable<? extends PO> rootDeleteIterable = Collections.singletonList(_rootDelete);
-                            return super.delete(rootDeleteIterable);
+                            return transactional(touch(e).then(r2dbcEntityTemplate.delete(clazz).matching(Query.query(idIs(e))).all()), e.getOrganizationId());
                         });
                     }
-                    PO _childrenDelete = instance(clazz);
-                    _childrenDelete.setId(e.getId());
-                    _childrenDelete.setOrganizationId(e.getOrganizationId());
-                    Iterable<? extends PO> childDeleteIterable = Collections.singletonList(_childrenDelete);
-                    Mono<Void> deleteSelf = super.delete(childDeleteIterable);
-
                     //删除当前节点,并将他们的子节点向前移动，挂靠在之前的parentId上
-                    PO _childrenUpdate = instance(clazz);
-                    _childrenUpdate.setParentId(e.getId());
-                    _childrenUpdate.setOrganizationId(e.getOrganizationId());
-                    Flux<PO> childrenUpdate =  super.find(_childrenUpdate).flatMap(x->{
-                        x.setParentId(e.getParentId());
-                        return Flux.just(x);
+                    return principal().flatMap(user -> {
+                        Mono<Long> statements = touch(e)
+                                .then(updateParent("parentId", e, e.getParentId(), user))
+                                .then(pathToParent(e, user))
+                                .then(r2dbcEntityTemplate.delete(clazz).matching(Query.query(idIs(e))).all())
+                                .then(pathMissing(e) ? repath(dto.getOrganizationId()).thenReturn(0L) : Mono.empty());
+                        return transactional(statements, dto.getOrganizationId());
                     });
-                    Flux<PO> update = super.update(childrenUpdate);
-                    return Flux.concat(update,deleteSelf).then();
-                }).then();
+                }).then())
+                .as(e -> evictTree(e, dto.getOrganizationId()))
+                .as(e -> publish(e, dto.getOrganizationId(), () -> ComplianceTreeFeed.delta(ComplianceTreeFeed.REMOVE, dto.getTargetNodeId(), null, null, null)));
     }
 }
@@ -0,0 +1,137 @@
+package org.lambda.framework.compliance.stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.util.NameTransformer;
+import org.lambda.framework.common.enums.JsonSymbolicFinalConfig;
+import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.compliance.repository.po.IFlattenTreePO;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.lambda.framework.common.enums.CommonExceptionEnum.ES_COMMON_019;
+
+/**
+ * @description: 树的流式JSON输出
+ * 按深度优先的顺序访问节点并逐个写出,每攒够一个分块就作为一个DataBuffer发出,下游请求时才继续写下一个分块
+ * 输出与ResponseTemplete包装后的整棵树相同,只是childrens字段总在节点的最后,内存中同一时刻只有一个分块的字节
+ **/
+public class TreeJsonStream {
+
+    //每个DataBuffer的大小
+    private static final int CHUNK = 8192;
+
+    private static final String CHILDRENS = "childrens";
+
+    //序列化节点自身的字段时去掉childrens,子节点由遍历写出
+    private final ObjectMapper mapper;
+
+    //只输出字段、不输出大括号的序列化器,每个实体类解析一次
+    private final ClassValue<JsonSerializer<Object>> fields = new ClassValue<>() {
+        @Override
+        protected JsonSerializer<Object> computeValue(Class<?> type) {
+            try {
+                return mapper.getSerializerProviderInstance().findValueSerializer(type).unwrappingSerializer(NameTransformer.NOP);
+            } catch (IOException e) {
+                throw new EventException(ES_COMMON_019);
+            }
+        }
+    };
+
+    //使用响应编码器的ObjectMapper,与findTree等接口的输出格式一致;复制后再修改,不影响编码器本身
+    public TreeJsonStream(ObjectMapper objectMapper) {
+        this.mapper = objectMapper.copy().registerModule(new SimpleModule().setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+                if(IFlattenTreePO.class.isAssignableFrom(beanDesc.getBeanClass())) beanProperties.removeIf(e -> CHILDRENS.equals(e.getName()));
+                return beanProperties;
+            }
+        }));
+    }
+
+    //bufferFactory使用响应的,由服务器负责释放
+    public Flux<DataBuffer> write(List<? extends IFlattenTreePO> tree, DataBufferFactory bufferFactory) {
+        return Flux.generate(() -> new State(tree, bufferFactory), this::next, State::close);
+    }
+
+    private State next(State state, SynchronousSink<DataBuffer> sink) {
+        if(state.finished){
+            sink.complete();
+            return state;
+        }
+        try {
+            JsonGenerator generator = state.generator;
+            while (state.bytes.size() + Math.max(0, generator.getOutputBuffered()) < CHUNK && !state.stack.isEmpty()) {
+                Iterator<?> iterator = state.stack.peek();
+                if(!iterator.hasNext()){
+                    state.stack.pop();
+                    generator.writeEndArray();
+                    //栈空时关闭的是data数组,否则是某个节点的childrens
+                    generator.writeEndObject();
+                    continue;
+                }
+                IFlattenTreePO node = (IFlattenTreePO) iterator.next();
+                generator.writeStartObject();
+                fields.get(node.getClass()).serialize(node, generator, state.provider);
+                List<?> childrens = node.getChildrens();
+                if(childrens == null){
+                    generator.writeNullField(CHILDRENS);
+                    generator.writeEndObject();
+                    continue;
+                }
+                generator.writeArrayFieldStart(CHILDRENS);
+                state.stack.push(childrens.iterator());
+            }
+            generator.flush();
+            state.finished = state.stack.isEmpty();
+            sink.next(state.bufferFactory.wrap(state.bytes.toByteArray()));
+            state.bytes.reset();
+        } catch (IOException e) {
+            sink.error(new EventException(ES_COMMON_019));
+        }
+        return state;
+    }
+
+    private class State {
+        private final ByteArrayBuilder bytes = new ByteArrayBuilder(CHUNK + CHUNK / 4);
+        private final Deque<Iterator<?>> stack = new ArrayDeque<>();
+        private final SerializerProvider provider = mapper.getSerializerProviderInstance();
+        private final DataBufferFactory bufferFactory;
+        private final JsonGenerator generator;
+        private boolean finished;
+
+        private State(List<? extends IFlattenTreePO> tree, DataBufferFactory bufferFactory) throws IOException {
+            this.bufferFactory = bufferFactory;
+            generator = mapper.getFactory().createGenerator(bytes);
+            generator.writeStartObject();
+            generator.writeStringField("serviceCode", JsonSymbolicFinalConfig.DEFAULT_SUCCESS_SERVICE_CODE);
+            generator.writeStringField("serviceMessage", JsonSymbolicFinalConfig.DEFAULT_SUCCESS_SERVICE_MESSAGE);
+            generator.writeArrayFieldStart("data");
+            stack.push(tree == null ? Collections.emptyIterator() : tree.iterator());
+        }
+
+        private void close() {
+            try {
+                generator.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.lambda.framework.redis.config;
+
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+/**
+ * @description: 按配置前缀读取连接参数的redis配置
+ * 子类只需要提供前缀,连接参数从 <前缀>.redis.* 读取,配置项及默认值与逐个声明@Value的配置类相同:
+ * host(0) port(6379) password() database(0)
+ * lettuce.pool.max-active(8) lettuce.pool.max_wait-seconds(50) lettuce.pool.max-idle(8) lettuce.pool.min-idle(0)
+ **/
+public abstract class AbstractPrefixedReactiveRedisRepositoryConfig extends AbstractReactiveRedisRepositoryConfig implements EnvironmentAware {
+
+    private final String prefix;
+
+    private Environment environment;
+
+    protected AbstractPrefixedReactiveRedisRepositoryConfig(String prefix) {
+        this.prefix = prefix + ".redis.";
+    }
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    private <T> T property(String name, Class<T> type, T defaultValue) {
+        return environment.getProperty(prefix + name, type, defaultValue);
+    }
+
+    @Override
+    protected String host() {
+        return property("host", String.class, "0");
+    }
+
+    @Override
+    protected Integer port() {
+        return property("port", Integer.class, 6379);
+    }
+
+    @Override
+    protected String password() {
+        return property("password", String.class, "");
+    }
+
+    @Override
+    protected Integer maxActive() {
+        return property("lettuce.pool.max-active", Integer.class, 8);
+    }
+
+    @Override
+    protected Integer maxWaitSeconds() {
+        return property("lettuce.pool.max_wait-seconds", Integer.class, 50);
+    }
+
+    @Override
+    protected Integer maxIdle() {
+        return property("lettuce.pool.max-idle", Integer.class, 8);
+    }
+
+    @Override
+    protected Integer minIdle() {
+        return property("lettuce.pool.min-idle", Integer.class, 0);
+    }
+
+    @Override
+    protected Integer database() {
+        return property("database", Integer.class, 0);
+    }
+}
@@ -3,10 +3,19 @@ package org.lambda.framework.redis.operation;
 
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.data.domain.Range;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -54,4 +63,61 @@ public class ReactiveRedisOperation extends ReactiveRedisTemplate{
     public <K>Mono<Boolean> existKey(K k){
         return super.hasKey(k);
     }
+
+    public <K>Mono<Long> increment(K k){
+        return super.opsForValue().increment(k);
+    }
+
+    //多个key在一条DEL命令中删除
+    public <K>Mono<Long> deleteAll(Collection<K> ks){
+        if(ks == null || ks.isEmpty())return Mono.just(0L);
+        return super.delete(ks.toArray());
+    }
+
+    //执行lua脚本,参数按原始字符串传入,不经过value的序列化,需要与已有value比较时由调用方按相同格式序列化
+    @SuppressWarnings("unchecked")
+    public <K,T>Flux<T> script(RedisScript<T> script, List<K> keys, List<String> args){
+        return super.execute(script, keys, args, RedisElementWriter.from(StringRedisSerializer.UTF_8), (RedisElementReader<T>) RedisElementReader.from(StringRedisSerializer.UTF_8));
+    }
+
+    public <K,HK,HV>Mono<Boolean> hashSet(K k, HK hk, HV hv){
+        return super.opsForHash().put(k,hk,hv);
+    }
+
+    public <K,HK,HV>Mono<HV> hashGet(K k, HK hk){
+        return super.opsForHash().get(k,hk);
+    }
+
+    public <K,HK,HV>Flux<Map.Entry<HK,HV>> hashEntries(K k){
+        return super.opsForHash().entries(k);
+    }
+
+    public <K,HK>Mono<Long> hashDelete(K k, Collection<HK> hks){
+        if(hks == null || hks.isEmpty())return Mono.just(0L);
+        return super.opsForHash().remove(k,hks.toArray());
+    }
+
+    public <K,V>Mono<Long> setAdd(K k, V v){
+        return super.opsForSet().add(k,v);
+    }
+
+    public <K,V>Flux<V> setMembers(K k){
+        return super.opsForSet().members(k);
+    }
+
+    public <K,V>Mono<Long> setRemove(K k, V v){
+        return super.opsForSet().remove(k,v);
+    }
+
+    public <K,V>Mono<Boolean> zsetAdd(K k, V v, double score){
+        return super.opsForZSet().add(k,v,score);
+    }
+
+    public <K>Mono<Long> zsetRemoveRangeByScore(K k, double min, double max){
+        return super.opsForZSet().removeRangeByScore(k, Range.closed(min,max));
+    }
+
+    public <K>Mono<Long> zsetSize(K k){
+        return super.opsForZSet().size(k);
+    }
 }
@@ -0,0 +1,13 @@
+package org.lambda.framework.repository.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @description: 标记读多写少的实体(配置、字典、机构树等)
+ * 开启lambda.repository.cache.enable后,这些实体的findById/findAll(Example)结果进入两级缓存
+ **/
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RepositoryCacheable {
+}
@@ -5,11 +5,19 @@ import io.r2dbc.pool.ConnectionPoolConfiguration;
 import io.r2dbc.spi.ConnectionFactories;
 import io.r2dbc.spi.ConnectionFactory;
 import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.ValidationDepth;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.lambda.framework.repository.enums.ReplicaStrategy;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static io.r2dbc.spi.ConnectionFactoryOptions.*;
 
+@Slf4j
 public abstract class AbstractReactiveMySqlRepositoryConfig {
 
     protected abstract String host();
@@ -23,22 +31,165 @@ public abstract class AbstractReactiveMySqlRepositoryConfig {
     //连接池中的最大连接数
     protected abstract Integer maxSize();
 
+    //启动时预先创建的连接数
+    protected Integer initialSize(){
+        return 10;
+    }
+    //连接池保持的最少空闲连接数
+    protected Integer minIdle(){
+        return 5;
+    }
+    //连接的最大存活时间,<=0时不限制
+    protected Integer maxLifeTimeSeconds(){
+        return 1800;
+    }
+    //获取连接的最大等待时间,<=0时不限制
+    protected Integer maxAcquireTimeSeconds(){
+        return 10;
+    }
+    //获取连接失败时的重试次数
+    protected Integer acquireRetry(){
+        return 1;
+    }
+    //后台清理空闲和过期连接的间隔,<=0时只在获取连接时清理
+    protected Integer backgroundEvictionIntervalSeconds(){
+        return 60;
+    }
+    //获取连接时执行的校验语句,为空时只校验本地连接状态
+    protected String validationQuery(){
+        return null;
+    }
+
+    //已创建的连接池指标,由子类注册为MeterBinder
+    protected final List<ReactiveMySqlPoolMetrics> poolMetrics = new ArrayList<>();
+
+    //从库地址 host:port,为空时不启用读写分离
+    protected List<String> replicaHosts(){
+        return Collections.emptyList();
+    }
+    protected ReplicaStrategy replicaStrategy(){
+        return ReplicaStrategy.ROUND_ROBIN;
+    }
+    //从库复制延迟超过该值时不参与路由,<=0时不检查
+    protected Integer replicaMaxLagSeconds(){
+        return 10;
+    }
+    protected Integer replicaCheckIntervalSeconds(){
+        return 5;
+    }
+
+    //语句追踪,记录每类语句的耗时、行数和慢查询
+    //默认关闭:每条语句约增加0.8~2.3us(见MySqlTracingBenchmark),往返300us的查询在1%以内,更快的查询占比更高
+    protected Boolean traceEnable(){
+        return false;
+    }
+    protected Integer slowQueryMillis(){
+        return 1000;
+    }
+    protected Boolean slowQueryLog(){
+        return true;
+    }
+    //记录指标的归一化SQL数量上限
+    protected Integer traceMaxStatements(){
+        return 500;
+    }
+    //保留的慢查询样本数
+    protected Integer slowQuerySamples(){
+        return 100;
+    }
+
+    //启用追踪时的语句指标,由子类注册为MeterBinder
+    protected ReactiveMySqlStatementMetrics statementMetrics;
+
+    //启用追踪时在最外层包装追踪代理,获取连接的耗时包含分片、读写分离的路由和连接池等待
+    protected ConnectionFactory buildTracingConnectionFactory(){
+        ConnectionFactory connectionFactory = buildShardingConnectionFactory();
+        if(traceEnable() == null || !traceEnable())return connectionFactory;
+        this.statementMetrics = new ReactiveMySqlStatementMetrics(slowQueryMillis(), slowQueryLog(), traceMaxStatements(), slowQuerySamples());
+        return new ReactiveMySqlTracingConnectionFactory(connectionFactory, statementMetrics);
+    }
+
+    //分片地址 host:port/database,为空时不启用分片
+    protected List<String> shardHosts(){
+        return Collections.emptyList();
+    }
+    //实体上决定分片的属性
+    protected String shardKey(){
+        return "organizationId";
+    }
+
+    //配置了分片时返回分片连接工厂,每个分片只有一个主库,不再使用从库配置;否则按读写分离配置返回
+    protected ConnectionFactory buildShardingConnectionFactory(){
+        List<String> hosts = shardHosts();
+        if(hosts == null || hosts.isEmpty())return buildRoutingConnectionFactory();
+        List<ConnectionFactory> shards = new ArrayList<>();
+        for (String shardHost : hosts) {
+            if(StringUtils.isBlank(shardHost))continue;
+            String[] location = shardHost.trim().split("/");
+            String[] address = location[0].split(":");
+            shards.add(buildMysqlConnectionFactory("shard-" + shards.size(), address[0], address.length > 1 ? Integer.valueOf(address[1]) : port(), location.length > 1 ? location[1] : database()));
+        }
+        if(shards.isEmpty())return buildRoutingConnectionFactory();
+        return new ReactiveMySqlShardingConnectionFactory(shards, ShardKeyExtractor.property(shardKey()));
+    }
+
+    //配置了从库时返回读写分离的连接工厂,否则返回主库连接池
+    protected ConnectionFactory buildRoutingConnectionFactory(){
+        ConnectionFactory primary = buildMysqlConnectionFactory();
+        List<String> hosts = replicaHosts();
+        if(hosts == null || hosts.isEmpty())return primary;
+        List<ConnectionFactory> replicas = new ArrayList<>();
+        for (String replicaHost : hosts) {
+            if(StringUtils.isBlank(replicaHost))continue;
+            String[] address = replicaHost.trim().split(":");
+            replicas.add(buildMysqlConnectionFactory("replica-" + replicas.size(), address[0], address.length > 1 ? Integer.valueOf(address[1]) : port()));
+        }
+        if(replicas.isEmpty())return primary;
+        return new ReactiveMySqlRoutingConnectionFactory(primary, replicas, replicaStrategy())
+                .checkLag(replicaMaxLagSeconds(), replicaCheckIntervalSeconds());
+    }
+
     protected ConnectionFactory buildMysqlConnectionFactory(){
+        return buildMysqlConnectionFactory("primary", host(), port());
+    }
+
+    protected ConnectionFactory buildMysqlConnectionFactory(String name, String host, Integer port){
+        return buildMysqlConnectionFactory(name, host, port, database());
+    }
+
+    protected ConnectionFactory buildMysqlConnectionFactory(String name, String host, Integer port, String database){
         ConnectionFactoryOptions options = ConnectionFactoryOptions.builder()
                 .option(DRIVER, "mysql")
-                .option(HOST, host())
+                .option(HOST, host)
                 .option(USER, user())
-                .option(PORT, port())
+                .option(PORT, port)
                 .option(PASSWORD, password())
-                .option(DATABASE, database())
+                .option(DATABASE, database)
                 .option(CONNECT_TIMEOUT, Duration.ofSeconds(connectTimeoutSeconds()))
                 .build();
         ConnectionFactory connectionFactory = ConnectionFactories.get(options);
-        ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration.builder(connectionFactory)
+        ReactiveMySqlPoolMetrics metrics = new ReactiveMySqlPoolMetrics(name);
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(connectionFactory)
+                .name(name)
                 .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds()))
                 .maxSize(maxSize())
-                .build();
+                .initialSize(Math.min(initialSize(), maxSize()))
+                .minIdle(Math.min(minIdle(), maxSize()))
+                .acquireRetry(acquireRetry())
+                .metricsRecorder(metrics);
+        if(maxLifeTimeSeconds() > 0)builder.maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds()));
+        if(maxAcquireTimeSeconds() > 0)builder.maxAcquireTime(Duration.ofSeconds(maxAcquireTimeSeconds()));
+        if(backgroundEvictionIntervalSeconds() > 0)builder.backgroundEvictionInterval(Duration.ofSeconds(backgroundEvictionIntervalSeconds()));
+        if(StringUtils.isNotBlank(validationQuery())){
+            builder.validationQuery(validationQuery());
+        }else {
+            builder.validationDepth(ValidationDepth.LOCAL);
+        }
         // ConnectionPool实现了ConnectionFactory接口，使用ConnectionFactory替换ConnectionFactory
-        return new ConnectionPool(configuration);
+        ConnectionPool pool = new ReactiveMySqlConnectionPool(builder.build(), metrics);
+        poolMetrics.add(metrics);
+        //启动时预热连接,避免上线后第一批请求都在建立连接;数据库不可用时不阻塞启动,首次获取连接时再创建
+        pool.warmup().subscribe(null, e -> log.warn("mysql connection pool {} warmup failed: {}", name, e.getMessage()));
+        return pool;
     }
 }
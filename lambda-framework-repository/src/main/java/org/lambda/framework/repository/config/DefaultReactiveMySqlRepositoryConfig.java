@@ -2,8 +2,12 @@ package org.lambda.framework.repository.config;
 
 import org.apache.commons.lang3.StringUtils;
 import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.repository.enums.ReplicaStrategy;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.*;
 
 public class DefaultReactiveMySqlRepositoryConfig  extends AbstractReactiveMySqlRepositoryConfig  {
@@ -54,6 +58,43 @@ public class DefaultReactiveMySqlRepositoryConfig  extends AbstractReactiveMySql
     private Integer maxIdleTimeSeconds;
     @Value("${lambda.repository.mysql.max-size:50}")
     private Integer maxSize;
+    //以下配置未设置时为null,使用AbstractReactiveMySqlRepositoryConfig中的默认值
+    @Value("${lambda.repository.mysql.initial-size:#{null}}")
+    private Integer initialSize;
+    @Value("${lambda.repository.mysql.min-idle:#{null}}")
+    private Integer minIdle;
+    @Value("${lambda.repository.mysql.max-life-time-seconds:#{null}}")
+    private Integer maxLifeTimeSeconds;
+    @Value("${lambda.repository.mysql.max-acquire-time-seconds:#{null}}")
+    private Integer maxAcquireTimeSeconds;
+    @Value("${lambda.repository.mysql.acquire-retry:#{null}}")
+    private Integer acquireRetry;
+    @Value("${lambda.repository.mysql.background-eviction-interval-seconds:#{null}}")
+    private Integer backgroundEvictionIntervalSeconds;
+    @Value("${lambda.repository.mysql.validation-query:#{null}}")
+    private String validationQuery;
+    @Value("#{'${lambda.repository.mysql.replica.hosts:}'.empty ?new String[]{} :'${lambda.repository.mysql.replica.hosts:}'.split(',')}")
+    private String[] replicaHosts;
+    @Value("${lambda.repository.mysql.replica.strategy:#{null}}")
+    private ReplicaStrategy replicaStrategy;
+    @Value("${lambda.repository.mysql.replica.max-lag-seconds:#{null}}")
+    private Integer replicaMaxLagSeconds;
+    @Value("${lambda.repository.mysql.replica.check-interval-seconds:#{null}}")
+    private Integer replicaCheckIntervalSeconds;
+    @Value("#{'${lambda.repository.mysql.shard.hosts:}'.empty ?new String[]{} :'${lambda.repository.mysql.shard.hosts:}'.split(',')}")
+    private String[] shardHosts;
+    @Value("${lambda.repository.mysql.shard.key:#{null}}")
+    private String shardKey;
+    @Value("${lambda.repository.mysql.trace.enable:#{null}}")
+    private Boolean traceEnable;
+    @Value("${lambda.repository.mysql.trace.slow-query-millis:#{null}}")
+    private Integer slowQueryMillis;
+    @Value("${lambda.repository.mysql.trace.slow-query-log:#{null}}")
+    private Boolean slowQueryLog;
+    @Value("${lambda.repository.mysql.trace.max-statements:#{null}}")
+    private Integer traceMaxStatements;
+    @Value("${lambda.repository.mysql.trace.slow-query-samples:#{null}}")
+    private Integer slowQuerySamples;
 
     @Override
     protected String host() {
@@ -94,4 +135,94 @@ public class DefaultReactiveMySqlRepositoryConfig  extends AbstractReactiveMySql
     protected Integer maxSize() {
         return this.maxSize;
     }
+
+    @Override
+    protected Integer initialSize() {
+        return this.initialSize == null ? super.initialSize() : this.initialSize;
+    }
+
+    @Override
+    protected Integer minIdle() {
+        return this.minIdle == null ? super.minIdle() : this.minIdle;
+    }
+
+    @Override
+    protected Integer maxLifeTimeSeconds() {
+        return this.maxLifeTimeSeconds == null ? super.maxLifeTimeSeconds() : this.maxLifeTimeSeconds;
+    }
+
+    @Override
+    protected Integer maxAcquireTimeSeconds() {
+        return this.maxAcquireTimeSeconds == null ? super.maxAcquireTimeSeconds() : this.maxAcquireTimeSeconds;
+    }
+
+    @Override
+    protected Integer acquireRetry() {
+        return this.acquireRetry == null ? super.acquireRetry() : this.acquireRetry;
+    }
+
+    @Override
+    protected Integer backgroundEvictionIntervalSeconds() {
+        return this.backgroundEvictionIntervalSeconds == null ? super.backgroundEvictionIntervalSeconds() : this.backgroundEvictionIntervalSeconds;
+    }
+
+    @Override
+    protected String validationQuery() {
+        return this.validationQuery == null ? super.validationQuery() : this.validationQuery;
+    }
+
+    @Override
+    protected List<String> replicaHosts() {
+        return Arrays.asList(this.replicaHosts);
+    }
+
+    @Override
+    protected ReplicaStrategy replicaStrategy() {
+        return this.replicaStrategy == null ? super.replicaStrategy() : this.replicaStrategy;
+    }
+
+    @Override
+    protected Integer replicaMaxLagSeconds() {
+        return this.replicaMaxLagSeconds == null ? super.replicaMaxLagSeconds() : this.replicaMaxLagSeconds;
+    }
+
+    @Override
+    protected Integer replicaCheckIntervalSeconds() {
+        return this.replicaCheckIntervalSeconds == null ? super.replicaCheckIntervalSeconds() : this.replicaCheckIntervalSeconds;
+    }
+
+    @Override
+    protected List<String> shardHosts() {
+        return Arrays.asList(this.shardHosts);
+    }
+
+    @Override
+    protected String shardKey() {
+        return this.shardKey == null ? super.shardKey() : this.shardKey;
+    }
+
+    @Override
+    protected Boolean traceEnable() {
+        return this.traceEnable == null ? super.traceEnable() : this.traceEnable;
+    }
+
+    @Override
+    protected Integer slowQueryMillis() {
+        return this.slowQueryMillis == null ? super.slowQueryMillis() : this.slowQueryMillis;
+    }
+
+    @Override
+    protected Boolean slowQueryLog() {
+        return this.slowQueryLog == null ? super.slowQueryLog() : this.slowQueryLog;
+    }
+
+    @Override
+    protected Integer traceMaxStatements() {
+        return this.traceMaxStatements == null ? super.traceMaxStatements() : this.traceMaxStatements;
+    }
+
+    @Override
+    protected Integer slowQuerySamples() {
+        return this.slowQuerySamples == null ? super.slowQuerySamples() : this.slowQuerySamples;
+    }
 }
@@ -1,5 +1,6 @@
 package org.lambda.framework.repository.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
 import io.r2dbc.spi.ConnectionFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,7 +9,16 @@ import org.springframework.context.annotation.Configuration;
 public class EnableDefaultReactiveMysqlRepositoryConfig extends DefaultReactiveMySqlRepositoryConfig  {
     @Bean
     public ConnectionFactory mySqlConnectionFactory(){
-        return buildMysqlConnectionFactory();
+        return buildTracingConnectionFactory();
+    }
+
+    //依赖连接工厂,保证绑定时所有连接池都已创建
+    @Bean
+    public MeterBinder mySqlConnectionPoolMetrics(ConnectionFactory mySqlConnectionFactory){
+        return registry -> {
+            poolMetrics.forEach(e -> e.bindTo(registry));
+            if(statementMetrics != null)statementMetrics.bindTo(registry);
+        };
     }
 
 }
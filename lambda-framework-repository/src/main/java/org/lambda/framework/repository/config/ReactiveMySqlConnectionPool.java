@@ -0,0 +1,28 @@
+package org.lambda.framework.repository.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import reactor.core.publisher.Mono;
+
+/**
+ * @description: 记录获取连接耗时的连接池
+ **/
+public class ReactiveMySqlConnectionPool extends ConnectionPool {
+
+    private final ReactiveMySqlPoolMetrics metrics;
+
+    public ReactiveMySqlConnectionPool(ConnectionPoolConfiguration configuration, ReactiveMySqlPoolMetrics metrics) {
+        super(configuration);
+        this.metrics = metrics;
+        metrics.setPool(this);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return super.create().doOnSuccess(e -> metrics.recordAcquireLatency(System.nanoTime() - start));
+        });
+    }
+}
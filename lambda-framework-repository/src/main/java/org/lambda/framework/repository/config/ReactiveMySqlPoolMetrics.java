@@ -0,0 +1,114 @@
+package org.lambda.framework.repository.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import reactor.pool.PoolMetricsRecorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * @description: r2dbc连接池指标
+ * 作为PoolMetricsRecorder记录连接创建、销毁等耗时,作为MeterBinder向micrometer注册连接池的占用、空闲、等待数量
+ * 在绑定到MeterRegistry之前产生的记录直接丢弃
+ **/
+public class ReactiveMySqlPoolMetrics implements PoolMetricsRecorder, MeterBinder {
+
+    private static final String PREFIX = "lambda.repository.mysql.pool.";
+
+    private final String name;
+
+    private ConnectionPool pool;
+
+    private volatile Timer acquire;
+
+    private volatile Timer allocationSuccess;
+
+    private volatile Timer allocationFailure;
+
+    private volatile Timer destroy;
+
+    private volatile Counter recycled;
+
+    public ReactiveMySqlPoolMetrics(String name) {
+        this.name = name;
+    }
+
+    public void setPool(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.acquire = Timer.builder(PREFIX + "acquire").tag("pool", name).description("从连接池获取连接的耗时").register(registry);
+        this.allocationSuccess = Timer.builder(PREFIX + "allocation").tag("pool", name).tag("result", "success").description("创建连接的耗时").register(registry);
+        this.allocationFailure = Timer.builder(PREFIX + "allocation").tag("pool", name).tag("result", "failure").description("创建连接的耗时").register(registry);
+        this.destroy = Timer.builder(PREFIX + "destroy").tag("pool", name).description("关闭连接的耗时").register(registry);
+        this.recycled = Counter.builder(PREFIX + "recycled").tag("pool", name).description("归还到连接池的次数").register(registry);
+        gauge(registry, "acquired", PoolMetrics::acquiredSize);
+        gauge(registry, "allocated", PoolMetrics::allocatedSize);
+        gauge(registry, "idle", PoolMetrics::idleSize);
+        gauge(registry, "pending", PoolMetrics::pendingAcquireSize);
+        gauge(registry, "max-allocated", PoolMetrics::getMaxAllocatedSize);
+    }
+
+    private void gauge(MeterRegistry registry, String metric, ToIntFunction<PoolMetrics> value) {
+        Gauge.builder(PREFIX + metric, this, e -> e.pool == null ? 0 : e.pool.getMetrics().map(value::applyAsInt).orElse(0))
+                .tag("pool", name)
+                .register(registry);
+    }
+
+    public void recordAcquireLatency(long nanos) {
+        Timer timer = this.acquire;
+        if (timer != null) timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordAllocationSuccessAndLatency(long latencyMs) {
+        Timer timer = this.allocationSuccess;
+        if (timer != null) timer.record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordAllocationFailureAndLatency(long latencyMs) {
+        Timer timer = this.allocationFailure;
+        if (timer != null) timer.record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordResetLatency(long latencyMs) {
+    }
+
+    @Override
+    public void recordDestroyLatency(long latencyMs) {
+        Timer timer = this.destroy;
+        if (timer != null) timer.record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordRecycled() {
+        Counter counter = this.recycled;
+        if (counter != null) counter.increment();
+    }
+
+    @Override
+    public void recordLifetimeDuration(long millisecondsSinceAllocation) {
+    }
+
+    @Override
+    public void recordIdleTime(long millisecondsIdle) {
+    }
+
+    @Override
+    public void recordSlowPath() {
+    }
+
+    @Override
+    public void recordFastPath() {
+    }
+}
@@ -0,0 +1,161 @@
+package org.lambda.framework.repository.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.lambda.framework.repository.enums.ReplicaStrategy;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import org.springframework.transaction.reactive.TransactionContext;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @description: 读写分离的连接工厂
+ * 默认所有连接都从主库获取,事务开始时绑定的也是主库连接
+ * 只有通过readOnly()标记且不在事务中的调用才会路由到从库
+ * 定时检查从库的复制延迟,延迟超限、复制中断或无法连接的从库暂时不参与路由,没有可用从库时回到主库
+ **/
+public class ReactiveMySqlRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements DisposableBean {
+
+    private static final String READ_ONLY = "lambda.repository.read-only";
+
+    private static final String PRIMARY = "primary";
+
+    private static final String LAG_SQL = "SHOW SLAVE STATUS";
+
+    private final ConnectionFactory primary;
+
+    private final List<ConnectionFactory> replicas;
+
+    private final ReplicaStrategy strategy;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    //当前参与路由的从库下标
+    private volatile List<Integer> available;
+
+    private Disposable checker;
+
+    public ReactiveMySqlRoutingConnectionFactory(ConnectionFactory primary, List<ConnectionFactory> replicas, ReplicaStrategy strategy) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.strategy = strategy == null ? ReplicaStrategy.ROUND_ROBIN : strategy;
+        List<Integer> all = new ArrayList<>(replicas.size());
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+            all.add(i);
+        }
+        this.available = all;
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        afterPropertiesSet();
+    }
+
+    //将调用标记为只读,允许路由到从库
+    public static <T> Mono<T> readOnly(Mono<T> mono) {
+        return mono.contextWrite(Context.of(READ_ONLY, true));
+    }
+
+    public static <T> Flux<T> readOnly(Flux<T> flux) {
+        return flux.contextWrite(Context.of(READ_ONLY, true));
+    }
+
+    //maxLagSeconds<=0时不检查复制延迟
+    public ReactiveMySqlRoutingConnectionFactory checkLag(Integer maxLagSeconds, Integer intervalSeconds) {
+        if (maxLagSeconds == null || maxLagSeconds <= 0 || replicas.isEmpty()) return this;
+        if (checker != null) checker.dispose();
+        this.checker = Flux.interval(Duration.ZERO, Duration.ofSeconds(Math.max(1, intervalSeconds)))
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.range(0, replicas.size())
+                        .flatMap(i -> lag(replicas.get(i)).map(lag -> lag <= maxLagSeconds ? i : -1))
+                        .filter(i -> i >= 0)
+                        .sort()
+                        .collectList())
+                .subscribe(e -> this.available = e);
+        return this;
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> {
+            //事务中(包括开启事务时获取连接)总是使用主库,readOnly()包在事务外层时也不会把整个事务路由到从库
+            if (!context.getOrDefault(READ_ONLY, false) || context.hasKey(TransactionContext.class)) return Mono.just(PRIMARY);
+            return Mono.just(select());
+        });
+    }
+
+    private Object select() {
+        List<Integer> candidates = this.available;
+        if (candidates.isEmpty()) return PRIMARY;
+        if (strategy == ReplicaStrategy.LEAST_PENDING) {
+            Integer selected = null;
+            int least = Integer.MAX_VALUE;
+            for (Integer i : candidates) {
+                int pending = pending(replicas.get(i));
+                if (pending < least) {
+                    least = pending;
+                    selected = i;
+                }
+            }
+            return selected;
+        }
+        return candidates.get(Math.floorMod(counter.getAndIncrement(), candidates.size()));
+    }
+
+    private static int pending(ConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof ConnectionPool)) return 0;
+        Optional<PoolMetrics> metrics = ((ConnectionPool) connectionFactory).getMetrics();
+        return metrics.map(e -> e.acquiredSize() + e.pendingAcquireSize()).orElse(0);
+    }
+
+    //复制延迟秒数,复制中断或查询失败视为无限延迟,非从库视为没有延迟
+    private static Mono<Long> lag(ConnectionFactory connectionFactory) {
+        return Mono.usingWhen(connectionFactory.create(),
+                        connection -> Flux.from(connection.createStatement(LAG_SQL).execute())
+                                .flatMap(result -> result.map((row, metadata) -> lag(row, metadata)))
+                                .next()
+                                .defaultIfEmpty(0L),
+                        Connection::close)
+                .timeout(Duration.ofSeconds(5))
+                .onErrorReturn(Long.MAX_VALUE);
+    }
+
+    private static Long lag(Row row, RowMetadata metadata) {
+        for (ColumnMetadata column : metadata.getColumnMetadatas()) {
+            String name = column.getName();
+            if ("Seconds_Behind_Master".equalsIgnoreCase(name) || "Seconds_Behind_Source".equalsIgnoreCase(name)) {
+                Long lag = row.get(name, Long.class);
+                return lag == null ? Long.MAX_VALUE : lag;
+            }
+        }
+        return 0L;
+    }
+
+    @Override
+    public void destroy() {
+        if (checker != null) checker.dispose();
+        closeQuietly(primary);
+        replicas.forEach(ReactiveMySqlRoutingConnectionFactory::closeQuietly);
+    }
+
+    private static void closeQuietly(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof Disposable) ((Disposable) connectionFactory).dispose();
+    }
+}
@@ -0,0 +1,121 @@
+package org.lambda.framework.repository.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.lambda.framework.common.exception.EventException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_103;
+
+/**
+ * @description: 按分片键路由的连接工厂
+ * 分片键写入Reactor上下文,获取连接时按 floorMod(hash(分片键), 分片数) 选择分片,事务内的所有语句落在同一分片
+ * 没有分片键的语句直接报错,不会默认落到某个分片;跨分片查询必须通过scatter()显式发起,逐个分片执行后合并结果
+ * 分片可以是任意ConnectionFactory,包括读写分离的连接工厂或本地内存数据库
+ * 分片数变化会改变已有数据的归属,扩容时需要同时迁移数据
+ **/
+public class ReactiveMySqlShardingConnectionFactory extends AbstractRoutingConnectionFactory implements DisposableBean {
+
+    private static final String SHARD_KEY = "lambda.repository.shard-key";
+
+    private static final String SHARD_INDEX = "lambda.repository.shard-index";
+
+    private final List<ConnectionFactory> shards;
+
+    private final ShardKeyExtractor extractor;
+
+    public ReactiveMySqlShardingConnectionFactory(List<ConnectionFactory> shards, ShardKeyExtractor extractor) {
+        this.shards = shards;
+        this.extractor = extractor;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetConnectionFactories(targets);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    //按分片键路由,key为null时保持外层上下文中的分片
+    public static <T> Mono<T> shard(Mono<T> mono, Object key) {
+        if (key == null) return mono;
+        return mono.contextWrite(Context.of(SHARD_KEY, key));
+    }
+
+    public static <T> Flux<T> shard(Flux<T> flux, Object key) {
+        if (key == null) return flux;
+        return flux.contextWrite(Context.of(SHARD_KEY, key));
+    }
+
+    //按实体的分片键路由
+    public <T> Mono<T> route(Mono<T> mono, Object entity) {
+        return shard(mono, extractor.extract(entity));
+    }
+
+    public <T> Flux<T> route(Flux<T> flux, Object entity) {
+        return shard(flux, extractor.extract(entity));
+    }
+
+    //直接路由到指定下标的分片
+    public <T> Mono<T> at(Mono<T> mono, int index) {
+        return mono.contextWrite(Context.of(SHARD_INDEX, index));
+    }
+
+    public <T> Flux<T> at(Flux<T> flux, int index) {
+        return flux.contextWrite(Context.of(SHARD_INDEX, index));
+    }
+
+    //实体所在分片的下标,无法确定分片时报错
+    public int index(Object entity) {
+        Object key = extractor.extract(entity);
+        if (key == null) throw new EventException(ES_REPOSITORY_MYSQL_103);
+        return index(key, shards.size());
+    }
+
+    //在每个分片上执行同一个查询并合并结果,结果之间没有顺序保证
+    public <T> Flux<T> scatter(Supplier<? extends Flux<T>> query) {
+        return Flux.range(0, shards.size()).flatMap(i -> at(Flux.defer(query), i));
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    //所有分片是同一种数据库,方言识别使用第一个分片的元数据,不设置默认分片
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return shards.get(0).getMetadata();
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> {
+            if (context.hasKey(SHARD_INDEX)) return Mono.just(context.get(SHARD_INDEX));
+            if (context.hasKey(SHARD_KEY)) return Mono.just(index(context.get(SHARD_KEY), shards.size()));
+            if (shards.size() == 1) return Mono.just(0);
+            return Mono.error(new EventException(ES_REPOSITORY_MYSQL_103));
+        });
+    }
+
+    private static int index(Object key, int size) {
+        return Math.floorMod(key.hashCode(), size);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (ConnectionFactory shard : shards) {
+            if (shard instanceof DisposableBean) ((DisposableBean) shard).destroy();
+            else if (shard instanceof Disposable) ((Disposable) shard).dispose();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.lambda.framework.repository.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * @description: 语句级指标
+ * 按归一化后的SQL记录执行耗时直方图和返回行数,记录从连接工厂获取连接的耗时
+ * 超过阈值的语句计入慢查询,保留最近的慢查询样本,可选输出日志;日志和样本中只有归一化后的SQL,不包含参数
+ * 归一化SQL的数量有上限,超出后的语句统一记录为other,避免指标基数失控
+ **/
+@Slf4j
+public class ReactiveMySqlStatementMetrics implements MeterBinder {
+
+    private static final String PREFIX = "lambda.repository.mysql.";
+
+    private static final String OTHER = "other";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\d+|\\?\\[\\d+]");
+
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private static final Pattern VALUES_LIST = Pattern.compile("\\(\\?\\)(?:\\s*,\\s*\\(\\?\\))+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long slowQueryNanos;
+
+    private final boolean slowQueryLog;
+
+    private final int maxStatements;
+
+    private final int maxSamples;
+
+    //原始SQL到归一化SQL的缓存,同一条语句只做一次正则替换
+    private final Map<String, String> normalized = new ConcurrentHashMap<>();
+
+    private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedDeque<SlowQuery> samples = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger sampleCount = new AtomicInteger();
+
+    private volatile MeterRegistry registry;
+
+    private volatile Timer acquire;
+
+    private volatile Counter slow;
+
+    public ReactiveMySqlStatementMetrics(Integer slowQueryMillis, Boolean slowQueryLog, Integer maxStatements, Integer maxSamples) {
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+        this.slowQueryLog = slowQueryLog;
+        this.maxStatements = maxStatements;
+        this.maxSamples = maxSamples;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.acquire = Timer.builder(PREFIX + "connection.acquire").description("从连接工厂获取连接的耗时").register(registry);
+        this.slow = Counter.builder(PREFIX + "statement.slow").description("超过阈值的语句数").register(registry);
+        this.registry = registry;
+    }
+
+    //从连接工厂获取到连接
+    void acquired(long nanos) {
+        Timer timer = this.acquire;
+        if (timer != null) timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    //语句的结果全部消费或取消后调用
+    void executed(String query, long nanos, int rows, boolean success) {
+        String sql = normalize(query);
+        MeterRegistry registry = this.registry;
+        if (registry != null) {
+            Meters meter = meters(registry, sql);
+            (success ? meter.success : meter.failure).record(nanos, TimeUnit.NANOSECONDS);
+            meter.rows.record(rows);
+        }
+        if (nanos < slowQueryNanos) return;
+        Counter counter = this.slow;
+        if (counter != null) counter.increment();
+        SlowQuery sample = new SlowQuery(sql, TimeUnit.NANOSECONDS.toMillis(nanos), rows, success, Thread.currentThread().getName(), LocalDateTime.now());
+        samples.addFirst(sample);
+        if (sampleCount.incrementAndGet() > maxSamples && samples.pollLast() != null) sampleCount.decrementAndGet();
+        if (slowQueryLog) log.warn("mysql slow query {}ms rows={} success={}: {}", sample.getMillis(), rows, success, sql);
+    }
+
+    //最近的慢查询样本,新的在前
+    public List<SlowQuery> getSlowQueries() {
+        return new ArrayList<>(samples);
+    }
+
+    private Meters meters(MeterRegistry registry, String sql) {
+        Meters meter = meters.get(sql);
+        if (meter != null) return meter;
+        if (meters.size() >= maxStatements) sql = OTHER;
+        return meters.computeIfAbsent(sql, key -> new Meters(registry, key));
+    }
+
+    //去掉字面量和参数,合并IN列表和多行VALUES,使同一类语句归为一条
+    private String normalize(String sql) {
+        String result = normalized.get(sql);
+        if (result != null) return result;
+        result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = PLACEHOLDER.matcher(result).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = IN_LIST.matcher(result).replaceAll("(?)");
+        result = VALUES_LIST.matcher(result).replaceAll("(?)");
+        result = WHITESPACE.matcher(result).replaceAll(" ").trim();
+        if (normalized.size() < maxStatements * 4) normalized.put(sql, result);
+        return result;
+    }
+
+    private static class Meters {
+        private final Timer success;
+        private final Timer failure;
+        private final DistributionSummary rows;
+
+        private Meters(MeterRegistry registry, String sql) {
+            this.success = timer(registry, sql, "success");
+            this.failure = timer(registry, sql, "failure");
+            this.rows = DistributionSummary.builder(PREFIX + "statement.rows").tag("sql", sql).description("语句返回的行数").register(registry);
+        }
+
+        private static Timer timer(MeterRegistry registry, String sql, String result) {
+            return Timer.builder(PREFIX + "statement")
+                    .tag("sql", sql)
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .description("语句执行耗时,包含结果消费")
+                    .register(registry);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SlowQuery {
+        private String sql;
+        private long millis;
+        private int rows;
+        private boolean success;
+        private String thread;
+        private LocalDateTime time;
+    }
+}
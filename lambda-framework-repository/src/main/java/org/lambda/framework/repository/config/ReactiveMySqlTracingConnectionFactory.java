@@ -0,0 +1,379 @@
+package org.lambda.framework.repository.config;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ConnectionMetadata;
+import io.r2dbc.spi.IsolationLevel;
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.TransactionDefinition;
+import io.r2dbc.spi.ValidationDepth;
+import io.r2dbc.spi.Wrapped;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * @description: 语句追踪的连接工厂
+ * 包装目标连接工厂的连接、语句和结果,获取连接的耗时和每条语句的耗时、行数交给ReactiveMySqlStatementMetrics记录
+ * 可以通过unwrap()取得目标连接工厂,销毁时一并销毁目标连接工厂
+ * 包装类直接委托给目标对象,不使用r2dbc-proxy:后者每次方法调用都经过jdk动态代理和反射,并为每条语句记录绑定参数、创建回调上下文,
+ * 每条语句约增加5.6~8.5us;包装类约增加0.8~2.3us(1~100行),往返300us的查询在1%以内(见MySqlTracingBenchmark)
+ **/
+public class ReactiveMySqlTracingConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, DisposableBean {
+
+    private final ConnectionFactory target;
+
+    private final ReactiveMySqlStatementMetrics metrics;
+
+    public ReactiveMySqlTracingConnectionFactory(ConnectionFactory target, ReactiveMySqlStatementMetrics metrics) {
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    //未启用追踪时返回原连接工厂
+    public static ConnectionFactory unwrap(ConnectionFactory connectionFactory) {
+        return connectionFactory instanceof ReactiveMySqlTracingConnectionFactory ? ((ReactiveMySqlTracingConnectionFactory) connectionFactory).unwrap() : connectionFactory;
+    }
+
+    public ReactiveMySqlStatementMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public Publisher<? extends Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Mono.from(target.create()).map(connection -> {
+                metrics.acquired(System.nanoTime() - start);
+                return new TracingConnection(connection, metrics);
+            });
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return target.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return target;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (target instanceof DisposableBean) ((DisposableBean) target).destroy();
+        else if (target instanceof Disposable) ((Disposable) target).dispose();
+    }
+
+    //只有createStatement和createBatch需要包装,其余方法直接委托
+    private static class TracingConnection implements Connection, Wrapped<Connection> {
+
+        private final Connection target;
+
+        private final ReactiveMySqlStatementMetrics metrics;
+
+        private TracingConnection(Connection target, ReactiveMySqlStatementMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Statement createStatement(String sql) {
+            return new TracingStatement(target.createStatement(sql), sql, metrics);
+        }
+
+        @Override
+        public Batch createBatch() {
+            return new TracingBatch(target.createBatch(), metrics);
+        }
+
+        @Override
+        public Publisher<Void> beginTransaction() {
+            return target.beginTransaction();
+        }
+
+        @Override
+        public Publisher<Void> beginTransaction(TransactionDefinition definition) {
+            return target.beginTransaction(definition);
+        }
+
+        @Override
+        public Publisher<Void> close() {
+            return target.close();
+        }
+
+        @Override
+        public Publisher<Void> commitTransaction() {
+            return target.commitTransaction();
+        }
+
+        @Override
+        public Publisher<Void> createSavepoint(String name) {
+            return target.createSavepoint(name);
+        }
+
+        @Override
+        public boolean isAutoCommit() {
+            return target.isAutoCommit();
+        }
+
+        @Override
+        public ConnectionMetadata getMetadata() {
+            return target.getMetadata();
+        }
+
+        @Override
+        public IsolationLevel getTransactionIsolationLevel() {
+            return target.getTransactionIsolationLevel();
+        }
+
+        @Override
+        public Publisher<Void> releaseSavepoint(String name) {
+            return target.releaseSavepoint(name);
+        }
+
+        @Override
+        public Publisher<Void> rollbackTransaction() {
+            return target.rollbackTransaction();
+        }
+
+        @Override
+        public Publisher<Void> rollbackTransactionToSavepoint(String name) {
+            return target.rollbackTransactionToSavepoint(name);
+        }
+
+        @Override
+        public Publisher<Void> setAutoCommit(boolean autoCommit) {
+            return target.setAutoCommit(autoCommit);
+        }
+
+        @Override
+        public Publisher<Void> setLockWaitTimeout(Duration timeout) {
+            return target.setLockWaitTimeout(timeout);
+        }
+
+        @Override
+        public Publisher<Void> setStatementTimeout(Duration timeout) {
+            return target.setStatementTimeout(timeout);
+        }
+
+        @Override
+        public Publisher<Void> setTransactionIsolationLevel(IsolationLevel isolationLevel) {
+            return target.setTransactionIsolationLevel(isolationLevel);
+        }
+
+        @Override
+        public Publisher<Boolean> validate(ValidationDepth depth) {
+            return target.validate(depth);
+        }
+
+        @Override
+        public Connection unwrap() {
+            return target;
+        }
+    }
+
+    private static class TracingStatement implements Statement, Wrapped<Statement> {
+
+        private final Statement target;
+
+        private final String sql;
+
+        private final ReactiveMySqlStatementMetrics metrics;
+
+        private TracingStatement(Statement target, String sql, ReactiveMySqlStatementMetrics metrics) {
+            this.target = target;
+            this.sql = sql;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Statement add() {
+            target.add();
+            return this;
+        }
+
+        @Override
+        public Statement bind(int index, Object value) {
+            target.bind(index, value);
+            return this;
+        }
+
+        @Override
+        public Statement bind(String name, Object value) {
+            target.bind(name, value);
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(int index, Class<?> type) {
+            target.bindNull(index, type);
+            return this;
+        }
+
+        @Override
+        public Statement bindNull(String name, Class<?> type) {
+            target.bindNull(name, type);
+            return this;
+        }
+
+        @Override
+        public Statement returnGeneratedValues(String... columns) {
+            target.returnGeneratedValues(columns);
+            return this;
+        }
+
+        @Override
+        public Statement fetchSize(int rows) {
+            target.fetchSize(rows);
+            return this;
+        }
+
+        @Override
+        public Publisher<? extends Result> execute() {
+            return Execution.execute(target::execute, sql, metrics);
+        }
+
+        @Override
+        public Statement unwrap() {
+            return target;
+        }
+    }
+
+    //批量语句按第一条SQL记录
+    private static class TracingBatch implements Batch {
+
+        private final Batch target;
+
+        private final ReactiveMySqlStatementMetrics metrics;
+
+        private String sql;
+
+        private TracingBatch(Batch target, ReactiveMySqlStatementMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Batch add(String sql) {
+            if (this.sql == null) this.sql = sql;
+            target.add(sql);
+            return this;
+        }
+
+        @Override
+        public Publisher<? extends Result> execute() {
+            return Execution.execute(target::execute, sql == null ? "" : sql, metrics);
+        }
+    }
+
+    //一次执行从订阅开始计时,语句的结果流和它发出的每个结果都结束后记录,耗时包含结果消费
+    private static class Execution {
+
+        private final String sql;
+
+        private final ReactiveMySqlStatementMetrics metrics;
+
+        private final long start = System.nanoTime();
+
+        //未结束的结果流和结果数,初始为语句的结果流
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        //结果按顺序消费,在结束计数之前写入,计数归零的线程可见
+        private int rows;
+
+        private volatile boolean failed;
+
+        private Execution(String sql, ReactiveMySqlStatementMetrics metrics) {
+            this.sql = sql;
+            this.metrics = metrics;
+        }
+
+        private static Flux<Result> execute(Supplier<Publisher<? extends Result>> execute, String sql, ReactiveMySqlStatementMetrics metrics) {
+            return Flux.defer(() -> {
+                Execution execution = new Execution(sql, metrics);
+                return Flux.from(execute.get())
+                        .<Result>map(result -> {
+                            execution.pending.incrementAndGet();
+                            return new TracingResult(result, execution);
+                        })
+                        .doOnError(e -> execution.failed = true)
+                        .doFinally(signal -> execution.done());
+            });
+        }
+
+        private void done() {
+            if (pending.decrementAndGet() == 0) metrics.executed(sql, System.nanoTime() - start, rows, !failed);
+        }
+    }
+
+    //结果行不包装,只在映射函数中计数
+    private static class TracingResult implements Result {
+
+        private final Result target;
+
+        private final Execution execution;
+
+        private TracingResult(Result target, Execution execution) {
+            this.target = target;
+            this.execution = execution;
+        }
+
+        @Override
+        public Publisher<Long> getRowsUpdated() {
+            return track(target.getRowsUpdated());
+        }
+
+        @Override
+        public <T> Publisher<T> map(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+            return track(target.map((row, metadata) -> {
+                execution.rows++;
+                return mappingFunction.apply(row, metadata);
+            }));
+        }
+
+        @Override
+        public <T> Publisher<T> map(Function<? super Readable, ? extends T> mappingFunction) {
+            return track(target.map(readable -> {
+                if (readable instanceof Row) execution.rows++;
+                return mappingFunction.apply(readable);
+            }));
+        }
+
+        //过滤后的结果代替当前结果被消费,不增加未结束的计数
+        @Override
+        public Result filter(Predicate<Segment> filter) {
+            return new TracingResult(target.filter(filter), execution);
+        }
+
+        @Override
+        public <T> Publisher<T> flatMap(Function<Segment, ? extends Publisher<? extends T>> mappingFunction) {
+            return track(target.flatMap(segment -> {
+                if (segment instanceof RowSegment) execution.rows++;
+                return mappingFunction.apply(segment);
+            }));
+        }
+
+        private <T> Flux<T> track(Publisher<T> publisher) {
+            return Flux.from(publisher)
+                    .doOnError(e -> execution.failed = true)
+                    .doFinally(signal -> execution.done());
+        }
+    }
+}
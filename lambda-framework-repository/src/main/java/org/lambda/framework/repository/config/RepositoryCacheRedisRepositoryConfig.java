@@ -0,0 +1,38 @@
+package org.lambda.framework.repository.config;
+
+import org.lambda.framework.redis.config.AbstractPrefixedReactiveRedisRepositoryConfig;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.lambda.framework.repository.operation.mysql.ReactiveMySqlCacheOperation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @description: 查询结果缓存使用的redis,lambda.repository.cache.enable=true时生效
+ * 连接参数为 lambda.repository.cache.redis.*
+ **/
+@Configuration
+@ConditionalOnProperty(prefix = "lambda.repository.cache", name = "enable", havingValue = "true")
+public class RepositoryCacheRedisRepositoryConfig extends AbstractPrefixedReactiveRedisRepositoryConfig {
+    //缓存过期时间
+    @Value("${lambda.repository.cache.expire-seconds:300}")
+    private Long expireSeconds;
+    //本地缓存的最大条数
+    @Value("${lambda.repository.cache.local-maximum-size:10000}")
+    private Long localMaximumSize;
+
+    public RepositoryCacheRedisRepositoryConfig() {
+        super("lambda.repository.cache");
+    }
+
+    @Bean("repositoryCacheRedisOperation")
+    public ReactiveRedisOperation repositoryCacheRedisOperation(){
+        return buildRedisOperation();
+    }
+
+    @Bean
+    public ReactiveMySqlCacheOperation repositoryCacheOperation(){
+        return new ReactiveMySqlCacheOperation(repositoryCacheRedisOperation(), expireSeconds, localMaximumSize);
+    }
+}
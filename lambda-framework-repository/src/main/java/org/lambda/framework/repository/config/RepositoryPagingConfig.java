@@ -0,0 +1,24 @@
+package org.lambda.framework.repository.config;
+
+import org.lambda.framework.repository.operation.PagingCountCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @description: 分页配置,PagingMode.ESTIMATED使用的总数缓存
+ **/
+@Configuration
+public class RepositoryPagingConfig {
+    //总数缓存的过期时间
+    @Value("${lambda.repository.paging.count-cache.expire-seconds:10}")
+    private Long expireSeconds;
+    //总数缓存的最大条数
+    @Value("${lambda.repository.paging.count-cache.maximum-size:10000}")
+    private Long maximumSize;
+
+    @Bean
+    public PagingCountCache pagingCountCache(){
+        return new PagingCountCache(expireSeconds, maximumSize);
+    }
+}
@@ -0,0 +1,35 @@
+package org.lambda.framework.repository.config;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @description: 分片键提取器
+ * 从实体中取出决定分片的值,返回null表示该实体无法确定分片
+ **/
+@FunctionalInterface
+public interface ShardKeyExtractor {
+
+    Object extract(Object entity);
+
+    //按属性名读取分片键,每个实体类型的读方法只解析一次
+    static ShardKeyExtractor property(String name) {
+        Map<Class<?>, Optional<Method>> readers = new ConcurrentHashMap<>();
+        return entity -> {
+            if (entity == null) return null;
+            Optional<Method> reader = readers.computeIfAbsent(entity.getClass(), type -> {
+                PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, name);
+                Method method = descriptor == null ? null : descriptor.getReadMethod();
+                if (method != null) ReflectionUtils.makeAccessible(method);
+                return Optional.ofNullable(method);
+            });
+            return reader.map(method -> ReflectionUtils.invokeMethod(method, entity)).orElse(null);
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package org.lambda.framework.repository.enums;
+
+/**
+ * @description: 分页总数的计算方式
+ **/
+public enum PagingMode {
+    //每次都执行count,总数精确
+    EXACT,
+    //count结果按(实体,查询条件)缓存一段时间,总数可能略有延迟
+    ESTIMATED,
+    //不执行count,多查询一条判断是否有下一页,适用于无限滚动
+    PROBE
+}
@@ -0,0 +1,11 @@
+package org.lambda.framework.repository.enums;
+
+/**
+ * @description: 只读请求选择从库的方式
+ **/
+public enum ReplicaStrategy {
+    //依次轮询
+    ROUND_ROBIN,
+    //选择已占用及等待获取连接数最少的从库
+    LEAST_PENDING
+}
@@ -9,7 +9,10 @@ public enum RepositoryExceptionEnum implements ExceptionEnumFunction {
     ES_REPOSITORY_MYSQL_002("ES_REPOSITORY_MYSQL_002","mysql缺少password配置"),
     ES_REPOSITORY_MYSQL_003("ES_REPOSITORY_MYSQL_003","mysql缺少database配置"),
 
-    ES_REPOSITORY_MYSQL_100("ES_REPOSITORY_MYSQL_100","分页参数不规范 page 必须 >0 size必须 >0 ");
+    ES_REPOSITORY_MYSQL_100("ES_REPOSITORY_MYSQL_100","分页参数不规范 page 必须 >0 size必须 >0 "),
+    ES_REPOSITORY_MYSQL_101("ES_REPOSITORY_MYSQL_101","分页游标不合法"),
+    ES_REPOSITORY_MYSQL_102("ES_REPOSITORY_MYSQL_102","查询缓存序列化失败"),
+    ES_REPOSITORY_MYSQL_103("ES_REPOSITORY_MYSQL_103","无法确定分片,请指定分片键或使用跨分片查询");
 
 
     private String code;
@@ -0,0 +1,23 @@
+package org.lambda.framework.repository.operation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Cursored<Entity> {
+    private Long size;
+
+    //下一页的游标,没有下一页时为空
+    private String cursor;
+
+    private Boolean hasNext;
+
+    private List<Entity> records;
+}
@@ -20,5 +20,7 @@ public class Paged<Entity> {
 
     private Long pages;
 
+    private Boolean hasNext;
+
     private List<Entity> records;
 }
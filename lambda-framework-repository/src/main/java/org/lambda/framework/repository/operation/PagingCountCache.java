@@ -0,0 +1,71 @@
+package org.lambda.framework.repository.operation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.common.util.sample.JsonUtil;
+import org.lambda.framework.common.util.sample.MD5Util;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_102;
+
+/**
+ * @description: 分页总数缓存
+ * 按实体类型和查询条件缓存count结果,短时间内相同条件的翻页不再重复执行count
+ * 查询条件按所有属性生成key,包括@JsonIgnore的审计字段和机构字段,不同机构的条件不会共用同一个总数
+ * 每个实体类型有一个本地版本号,key包含读取时的版本号,写入后版本号加一,本节点之前缓存的总数全部失效
+ * 其他节点的写入不会通知本节点,最多延迟一个过期时间
+ **/
+public class PagingCountCache {
+
+    private final Cache<String, Long> counts;
+
+    private final Map<Class<?>, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    //不使用注解的序列化,@JsonIgnore的字段也需要进入key
+    private final ObjectMapper mapper;
+
+    public PagingCountCache(Long expireSeconds, Long maximumSize) {
+        this.counts = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+        this.mapper = JsonUtil.getJsonFactory();
+        this.mapper.configure(MapperFeature.USE_ANNOTATIONS, false);
+    }
+
+    public Mono<Long> get(Class<?> type, Object condition, Mono<Long> count) {
+        if (condition == null) return count;
+        Class<?> _type = type == null ? condition.getClass() : type;
+        String key = _type.getName() + "." + version(_type).get() + "." + key(condition);
+        Long total = counts.getIfPresent(key);
+        if (total != null) return Mono.just(total);
+        return count.doOnNext(e -> counts.put(key, e));
+    }
+
+    //实体写入后调用,使该实体类型在本节点缓存的总数全部失效
+    public void invalidate(Class<?> type) {
+        if (type == null) return;
+        version(type).incrementAndGet();
+    }
+
+    private AtomicLong version(Class<?> type) {
+        return versions.computeIfAbsent(type, e -> new AtomicLong());
+    }
+
+    private String key(Object condition) {
+        try {
+            return MD5Util.hash(condition.getClass().getName() + mapper.writeValueAsString(condition));
+        } catch (JsonProcessingException e) {
+            throw new EventException(ES_REPOSITORY_MYSQL_102);
+        }
+    }
+}
@@ -1,23 +1,68 @@
 package org.lambda.framework.repository.operation;
 
+import org.apache.commons.lang3.StringUtils;
 import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.repository.enums.PagingMode;
 import reactor.core.publisher.Mono;
 
-import static java.lang.Math.ceil;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_100;
+import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_101;
 
 public interface ReactiveUnifyPagingRepositoryOperation {
 
 
+    //page从1开始,0按第1页处理
     default <Condition,Entity>Mono<Paged<Entity>> find(Long page, Long size,Condition condition,UnifyPagingOperation<Entity> operation){
+        return this.find(page,size,condition,PagingMode.EXACT,operation);
+    }
+
+    default <Condition,Entity>Mono<Paged<Entity>> find(Long page, Long size,Condition condition,PagingMode mode,UnifyPagingOperation<Entity> operation){
         if(page == null || page<0  || size == null || size <0 || size == 0)throw new EventException(ES_REPOSITORY_MYSQL_100);
-        return operation.count().switchIfEmpty(Mono.just(Long.valueOf(0))).flatMap(e->{
-            return Mono.just(Paged.<Entity>builder().page(page).size(size).total(e).pages((long)(ceil(e/size))).build());
-        }).flatMap(e->{
-            return operation.<Entity>query().collectList().flatMap(records->{
-                e.setRecords(records);
-                return Mono.just(e);
+        long offset = (Math.max(page,1) - 1) * size;
+        if(mode == PagingMode.PROBE){
+            //多查询一条用于判断是否存在下一页,不执行count
+            return operation.query(offset,size + 1).collectList().map(records->{
+                boolean hasNext = records.size() > size;
+                if(hasNext) records = records.subList(0, size.intValue());
+                return Paged.<Entity>builder().page(page).size(size).hasNext(hasNext).records(records).build();
             });
+        }
+        Mono<Long> count = (mode == PagingMode.ESTIMATED ? operation.estimate() : operation.count()).switchIfEmpty(Mono.just(Long.valueOf(0)));
+        //count与查询分别从连接池获取连接并行执行
+        return Mono.zip(count,operation.query(offset,size).collectList()).map(e->{
+            Long total = e.getT1();
+            return Paged.<Entity>builder().page(page).size(size).total(total).pages((total + size - 1) / size)
+                    .hasNext(offset + e.getT2().size() < total).records(e.getT2()).build();
+        });
+    }
+
+    //游标分页,按排序键定位下一页,任意深度的翻页代价相同
+    default <Condition,Entity>Mono<Cursored<Entity>> find(String cursor, Long size,Condition condition,UnifyCursorOperation<Entity> operation){
+        if(size == null || size <= 0)throw new EventException(ES_REPOSITORY_MYSQL_100);
+        String after = decodeCursor(cursor);
+        //多查询一条用于判断是否存在下一页
+        return operation.query(after,size + 1).collectList().map(records->{
+            boolean hasNext = records.size() > size;
+            if(hasNext) records = records.subList(0, size.intValue());
+            String next = hasNext ? encodeCursor(operation.key(records.get(records.size() - 1))) : null;
+            return Cursored.<Entity>builder().size(size).cursor(next).hasNext(hasNext).records(records).build();
         });
     }
+
+    static String encodeCursor(String key) {
+        if(key == null)return null;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeCursor(String cursor) {
+        if(StringUtils.isBlank(cursor))return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        }catch (IllegalArgumentException e){
+            throw new EventException(ES_REPOSITORY_MYSQL_101);
+        }
+    }
 }
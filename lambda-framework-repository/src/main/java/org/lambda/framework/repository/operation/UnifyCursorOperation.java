@@ -0,0 +1,11 @@
+package org.lambda.framework.repository.operation;
+
+import reactor.core.publisher.Flux;
+
+public interface UnifyCursorOperation<Entity> {
+    //查询排序键大于after的limit条数据,after为空时从头开始
+    public Flux<Entity> query(String after, Long limit);
+
+    //记录的排序键,编码后作为下一页的游标
+    public String key(Entity entity);
+}
@@ -6,5 +6,15 @@ import reactor.core.publisher.Mono;
 public interface UnifyPagingOperation<Entity> {
     public Mono<Long> count();
 
+    //PagingMode.ESTIMATED时使用的总数,实现类可返回缓存的count结果(PagingCountCache),并在写入时使其失效,默认实现每次都执行count
+    public default Mono<Long> estimate() {
+        return count();
+    }
+
     public Flux<Entity> query();
+
+    //只查询一页数据,实现类应将offset/limit下推到SQL,默认实现退化为在全量结果上截取
+    public default Flux<Entity> query(Long offset, Long limit) {
+        return query().skip(offset).take(limit);
+    }
 }
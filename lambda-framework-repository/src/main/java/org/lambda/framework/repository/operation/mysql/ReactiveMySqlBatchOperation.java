@@ -0,0 +1,168 @@
+package org.lambda.framework.repository.operation.mysql;
+
+import org.reactivestreams.Publisher;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.core.ReactiveDataAccessStrategy;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @description: 批量写入
+ * 将输入按批次分组,每个批次生成一条语句,一次往返写入整个批次,输入以流的方式消费,同一时刻只在内存中保留一个批次
+ * 插入: 批次内所有实体都已预先生成主键(如GuidFactory)时使用多行 INSERT ... VALUES (...),(...),
+ *       多行INSERT无法可靠地回填自增主键,批次内有主键为空的实体时逐条插入,由数据库生成主键并回填
+ * 更新: UPDATE ... SET c = CASE id WHEN ? THEN ? ... END WHERE id IN (...),只更新已存在的行,
+ *       匹配的行数少于批次大小时说明有行不存在,与逐条update一样抛出异常;单主键以外的实体逐条更新
+ **/
+public class ReactiveMySqlBatchOperation {
+
+    //mysql单条语句最多65535个占位符
+    private static final int MAX_PARAMETERS = 65535;
+
+    private ReactiveMySqlBatchOperation() {
+    }
+
+    public static <Entity> Flux<Entity> insert(R2dbcEntityTemplate template, Class<Entity> type, Publisher<Entity> entities, Integer batchSize) {
+        ReactiveDataAccessStrategy strategy = template.getDataAccessStrategy();
+        int chunk = chunk(batchSize, strategy.getAllColumns(type).size());
+        return Flux.from(entities)
+                .buffer(chunk)
+                .concatMap(batch -> {
+                    if (!assigned(template, type, batch)) return Flux.fromIterable(batch).concatMap(template::insert);
+                    return insert(template, type, batch).thenMany(Flux.fromIterable(batch));
+                });
+    }
+
+    public static <Entity> Flux<Entity> update(R2dbcEntityTemplate template, Class<Entity> type, Publisher<Entity> entities, Integer batchSize) {
+        ReactiveDataAccessStrategy strategy = template.getDataAccessStrategy();
+        //每列占用 2*行数 个占位符,IN列表再占用 行数 个
+        int chunk = chunk(batchSize, strategy.getAllColumns(type).size() * 2 + 1);
+        boolean single = strategy.getIdentifierColumns(type).size() == 1;
+        return Flux.from(entities)
+                .buffer(chunk)
+                .concatMap(batch -> {
+                    if (!single || !distinct(template, type, batch)) return Flux.fromIterable(batch).concatMap(template::update);
+                    return update(template, type, batch).thenMany(Flux.fromIterable(batch));
+                });
+    }
+
+    private static int chunk(Integer batchSize, int parametersPerRow) {
+        return Math.max(1, Math.min(batchSize, MAX_PARAMETERS / Math.max(1, parametersPerRow)));
+    }
+
+    //批次内所有实体的主键都不为空
+    private static <Entity> boolean assigned(R2dbcEntityTemplate template, Class<Entity> type, List<Entity> batch) {
+        RelationalPersistentEntity<?> entity = template.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        for (Entity e : batch) {
+            if (entity.getIdentifierAccessor(e).getIdentifier() == null) return false;
+        }
+        return true;
+    }
+
+    //批次内主键不为空且不重复,重复时CASE只会取第一个值,与逐条更新的结果不同
+    private static <Entity> boolean distinct(R2dbcEntityTemplate template, Class<Entity> type, List<Entity> batch) {
+        RelationalPersistentEntity<?> entity = template.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        Set<Object> ids = new HashSet<>();
+        for (Entity e : batch) {
+            Object id = entity.getIdentifierAccessor(e).getIdentifier();
+            if (id == null || !ids.add(id)) return false;
+        }
+        return true;
+    }
+
+    private static <Entity> Mono<Long> insert(R2dbcEntityTemplate template, Class<Entity> type, List<Entity> batch) {
+        ReactiveDataAccessStrategy strategy = template.getDataAccessStrategy();
+        List<OutboundRow> rows = rows(strategy, batch);
+        //以第一行的列为准,所有行的列相同
+        List<SqlIdentifier> columns = new ArrayList<>(rows.get(0).keySet());
+        StringBuilder sql = new StringBuilder(64 + rows.size() * columns.size() * 3);
+        sql.append("INSERT INTO ").append(strategy.toSql(strategy.getTableName(type))).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append(strategy.toSql(columns.get(i)));
+        }
+        sql.append(") VALUES ");
+        for (int r = 0; r < rows.size(); r++) {
+            if (r > 0) sql.append(',');
+            sql.append('(');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) sql.append(',');
+                sql.append('?');
+            }
+            sql.append(')');
+        }
+        DatabaseClient.GenericExecuteSpec spec = template.getDatabaseClient().sql(sql.toString());
+        int index = 0;
+        for (OutboundRow row : rows) {
+            for (SqlIdentifier column : columns) {
+                spec = bind(strategy, spec, index++, row.get(column));
+            }
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    private static <Entity> Mono<Long> update(R2dbcEntityTemplate template, Class<Entity> type, List<Entity> batch) {
+        ReactiveDataAccessStrategy strategy = template.getDataAccessStrategy();
+        SqlIdentifier id = strategy.getIdentifierColumns(type).get(0);
+        String table = strategy.toSql(strategy.getTableName(type));
+        List<OutboundRow> rows = rows(strategy, batch);
+        List<SqlIdentifier> columns = new ArrayList<>(rows.get(0).keySet());
+        columns.remove(id);
+        String _id = strategy.toSql(id);
+        StringBuilder sql = new StringBuilder(64 + rows.size() * columns.size() * 16);
+        sql.append("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) sql.append(',');
+            sql.append(strategy.toSql(columns.get(i))).append(" = CASE ").append(_id);
+            for (int r = 0; r < rows.size(); r++) sql.append(" WHEN ? THEN ?");
+            sql.append(" END");
+        }
+        sql.append(" WHERE ").append(_id).append(" IN (");
+        for (int r = 0; r < rows.size(); r++) {
+            if (r > 0) sql.append(',');
+            sql.append('?');
+        }
+        sql.append(')');
+        DatabaseClient.GenericExecuteSpec spec = template.getDatabaseClient().sql(sql.toString());
+        int index = 0;
+        for (SqlIdentifier column : columns) {
+            for (OutboundRow row : rows) {
+                spec = bind(strategy, spec, index++, row.get(id));
+                spec = bind(strategy, spec, index++, row.get(column));
+            }
+        }
+        for (OutboundRow row : rows) {
+            spec = bind(strategy, spec, index++, row.get(id));
+        }
+        //连接启用了FOUND_ROWS,返回的是匹配的行数而不是值发生变化的行数
+        return spec.fetch().rowsUpdated().flatMap(updated -> {
+            if (updated < rows.size()) return Mono.error(new TransientDataAccessResourceException(
+                    "Failed to update table [" + table + "]; " + (rows.size() - updated) + " of " + rows.size() + " rows do not exist"));
+            return Mono.just(updated);
+        });
+    }
+
+    private static <Entity> List<OutboundRow> rows(ReactiveDataAccessStrategy strategy, List<Entity> batch) {
+        List<OutboundRow> rows = new ArrayList<>(batch.size());
+        for (Entity entity : batch) {
+            rows.add(strategy.getOutboundRow(entity));
+        }
+        return rows;
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(ReactiveDataAccessStrategy strategy, DatabaseClient.GenericExecuteSpec spec, int index, Parameter value) {
+        Parameter parameter = strategy.getBindValue(value);
+        return parameter.hasValue() ? spec.bind(index, parameter.getValue()) : spec.bindNull(index, parameter.getType());
+    }
+}
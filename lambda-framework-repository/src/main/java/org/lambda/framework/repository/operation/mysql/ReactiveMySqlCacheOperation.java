@@ -0,0 +1,132 @@
+package org.lambda.framework.repository.operation.mysql;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.common.util.sample.JsonUtil;
+import org.lambda.framework.common.util.sample.MD5Util;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.lambda.framework.repository.annotation.RepositoryCacheable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_102;
+
+/**
+ * @description: 查询结果的两级缓存,本地有界缓存 + redis
+ * 每个实体类型在redis中有一个版本号,缓存key包含读取时的版本号,写入完成后版本号加一,旧版本的缓存再也不会被读到
+ * 读取时先取版本号再取数据,即使并发的读取把旧数据写入缓存,也只会写在旧版本号下
+ * 缓存中保存的是JSON字符串,每次命中都反序列化为新的对象,调用方修改返回值不会污染缓存
+ **/
+@Slf4j
+public class ReactiveMySqlCacheOperation {
+
+    private static final String VERSION_KEY = "lambda.repository.cache-version.";
+
+    private static final String DATA_KEY = "lambda.repository.cache.";
+
+    private final ReactiveRedisOperation repositoryCacheRedisOperation;
+
+    private final Long expireSeconds;
+
+    private final Cache<String, String> local;
+
+    //不使用注解的序列化,@JsonIgnore的审计字段也需要进入缓存
+    private final ObjectMapper mapper;
+
+    public ReactiveMySqlCacheOperation(ReactiveRedisOperation repositoryCacheRedisOperation, Long expireSeconds, Long localMaximumSize) {
+        this.repositoryCacheRedisOperation = repositoryCacheRedisOperation;
+        this.expireSeconds = expireSeconds;
+        this.local = CacheBuilder.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+        this.mapper = JsonUtil.getJsonFactory();
+        this.mapper.configure(MapperFeature.USE_ANNOTATIONS, false);
+    }
+
+    public boolean cacheable(Class<?> type) {
+        return type != null && type.isAnnotationPresent(RepositoryCacheable.class);
+    }
+
+    //按条件生成缓存key
+    public String key(Object condition) {
+        return MD5Util.hash(write(condition));
+    }
+
+    public <T> Mono<T> get(Class<T> type, String key, Supplier<Mono<T>> loader) {
+        return cached(type, key, mapper.getTypeFactory().constructType(type), loader);
+    }
+
+    public <T> Flux<T> list(Class<T> type, String key, Supplier<Flux<T>> loader) {
+        JavaType listType = mapper.getTypeFactory().constructCollectionType(List.class, type);
+        return this.<List<T>>cached(type, key, listType, () -> loader.get().collectList()).flatMapIterable(e -> e);
+    }
+
+    //实体写入完成后调用,使该实体类型的所有缓存失效
+    public Mono<Void> invalidate(Class<?> type) {
+        return repositoryCacheRedisOperation.increment(VERSION_KEY + type.getName())
+                .onErrorResume(e -> {
+                    //redis不可用时无法推进版本号,清空本地缓存,redis中的旧数据最迟在过期后失效
+                    log.warn("repository cache invalidate {} failed: {}", type.getName(), e.getMessage());
+                    local.invalidateAll();
+                    return Mono.empty();
+                }).then();
+    }
+
+    private <T> Mono<T> cached(Class<?> type, String key, JavaType javaType, Supplier<Mono<T>> loader) {
+        return version(type).flatMap(version -> {
+            //redis不可用时直接查询数据库
+            if (version.isEmpty()) return loader.get();
+            String dataKey = DATA_KEY + type.getName() + "." + version.get() + "." + key;
+            String json = local.getIfPresent(dataKey);
+            if (json != null) return Mono.just(this.<T>read(json, javaType));
+            return repositoryCacheRedisOperation.<String, String>get(dataKey)
+                    .onErrorResume(e -> Mono.empty())
+                    .map(value -> {
+                        local.put(dataKey, value);
+                        return this.<T>read(value, javaType);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> loader.get().flatMap(value -> {
+                        String _json = write(value);
+                        local.put(dataKey, _json);
+                        return repositoryCacheRedisOperation.set(dataKey, _json, expireSeconds)
+                                .onErrorResume(e -> Mono.just(false))
+                                .thenReturn(value);
+                    })));
+        });
+    }
+
+    private Mono<Optional<String>> version(Class<?> type) {
+        return repositoryCacheRedisOperation.get(VERSION_KEY + type.getName())
+                .map(e -> Optional.of(e.toString()))
+                .defaultIfEmpty(Optional.of("0"))
+                .onErrorReturn(Optional.empty());
+    }
+
+    private String write(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new EventException(ES_REPOSITORY_MYSQL_102);
+        }
+    }
+
+    private <T> T read(String json, JavaType javaType) {
+        try {
+            return mapper.readValue(json, javaType);
+        } catch (JsonProcessingException e) {
+            throw new EventException(ES_REPOSITORY_MYSQL_102);
+        }
+    }
+}
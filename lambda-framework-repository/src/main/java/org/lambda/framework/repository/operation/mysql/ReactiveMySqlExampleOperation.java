@@ -0,0 +1,92 @@
+package org.lambda.framework.repository.operation.mysql;
+
+import org.lambda.framework.common.exception.EventException;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.core.ReactiveDataAccessStrategy;
+import org.springframework.data.r2dbc.core.StatementMapper;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.CriteriaDefinition;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.data.relational.core.sql.SqlIdentifier;
+import org.springframework.data.relational.repository.query.RelationalExampleMapper;
+import reactor.core.publisher.Flux;
+
+import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_101;
+
+/**
+ * @description: 基于Example的分页查询
+ * R2dbcRepository.findAll(Example)不支持limit,这里将Example转换为Query后把offset/limit下推到SQL
+ * 默认按主键升序排序,保证翻页结果稳定
+ **/
+public class ReactiveMySqlExampleOperation {
+
+    private ReactiveMySqlExampleOperation() {
+    }
+
+    public static <Entity> Flux<Entity> find(R2dbcEntityTemplate template, Example<Entity> example, Long offset, Long limit) {
+        Query query = sorted(template, example.getProbeType(), mapped(template, example));
+        return template.select(query.offset(offset).limit(limit.intValue()), example.getProbeType());
+    }
+
+    //游标查询,只查询主键大于after的数据,走主键索引定位,与翻页深度无关
+    public static <Entity> Flux<Entity> seek(R2dbcEntityTemplate template, Example<Entity> example, String after, Long limit) {
+        RelationalPersistentProperty id = idProperty(template, example.getProbeType());
+        Query query = mapped(template, example);
+        if (after != null) {
+            Object key;
+            try {
+                key = template.getConverter().getConversionService().convert(after, id.getType());
+            } catch (ConversionException e) {
+                throw new EventException(ES_REPOSITORY_MYSQL_101);
+            }
+            Criteria seek = Criteria.where(id.getName()).greaterThan(key);
+            CriteriaDefinition criteria = query.getCriteria().orElse(null);
+            query = Query.query(criteria instanceof Criteria && !criteria.isEmpty() ? ((Criteria) criteria).and(seek) : seek);
+        }
+        return template.select(query.sort(Sort.by(Sort.Direction.ASC, id.getName())).limit(limit.intValue()), example.getProbeType());
+    }
+
+    //流式查询,设置fetchSize后驱动使用服务端游标分批拉取,行按下游的请求量读取,内存占用与结果集大小无关
+    public static <Entity> Flux<Entity> stream(R2dbcEntityTemplate template, Example<Entity> example, Integer fetchSize) {
+        return stream(template, example.getProbeType(), mapped(template, example), fetchSize);
+    }
+
+    public static <Entity> Flux<Entity> stream(R2dbcEntityTemplate template, Class<Entity> type, Query query, Integer fetchSize) {
+        ReactiveDataAccessStrategy strategy = template.getDataAccessStrategy();
+        StatementMapper mapper = strategy.getStatementMapper().forType(type);
+        StatementMapper.SelectSpec select = mapper.createSelect(strategy.getTableName(type)).withProjection(strategy.getAllColumns(type).toArray(new SqlIdentifier[0]));
+        if (query.getCriteria().isPresent()) select = select.withCriteria(query.getCriteria().get());
+        if (query.isSorted()) select = select.withSort(query.getSort());
+        return template.getDatabaseClient().sql(mapper.getMappedObject(select))
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(strategy.getRowMapper(type))
+                .all();
+    }
+
+    //记录的主键,作为游标的排序键
+    public static String key(R2dbcEntityTemplate template, Object entity) {
+        Object id = template.getConverter().getMappingContext().getRequiredPersistentEntity(entity.getClass())
+                .getIdentifierAccessor(entity).getIdentifier();
+        return id == null ? null : id.toString();
+    }
+
+    public static Query sorted(R2dbcEntityTemplate template, Class<?> type, Query query) {
+        if (query.isSorted()) return query;
+        RelationalPersistentEntity<?> entity = template.getConverter().getMappingContext().getRequiredPersistentEntity(type);
+        if (!entity.hasIdProperty()) return query;
+        return query.sort(Sort.by(Sort.Direction.ASC, entity.getRequiredIdProperty().getName()));
+    }
+
+    private static <Entity> Query mapped(R2dbcEntityTemplate template, Example<Entity> example) {
+        return new RelationalExampleMapper(template.getConverter().getMappingContext()).getMappedExample(example);
+    }
+
+    private static RelationalPersistentProperty idProperty(R2dbcEntityTemplate template, Class<?> type) {
+        return template.getConverter().getMappingContext().getRequiredPersistentEntity(type).getRequiredIdProperty();
+    }
+}
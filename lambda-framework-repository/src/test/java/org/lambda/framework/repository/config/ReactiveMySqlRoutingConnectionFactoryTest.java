@@ -0,0 +1,171 @@
+package org.lambda.framework.repository.config;
+
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lambda.framework.repository.enums.ReplicaStrategy;
+import org.reactivestreams.Publisher;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @description: 读写分离路由,主库和从库都是H2内存数据库,每个库的whoami表中只有自己的名字
+ **/
+public class ReactiveMySqlRoutingConnectionFactoryTest {
+
+    private static final String WHOAMI = "SELECT name FROM whoami";
+
+    private final List<ReactiveMySqlRoutingConnectionFactory> routings = new ArrayList<>();
+
+    private final List<CloseableConnectionFactory> databases = new ArrayList<>();
+
+    //H2内存库保留一个连接,不关闭时进程退出会等待
+    @AfterEach
+    public void destroy() {
+        routings.forEach(ReactiveMySqlRoutingConnectionFactory::destroy);
+        databases.forEach(e -> e.close().block());
+    }
+
+    //未标记readOnly()的读和所有写都使用主库
+    @Test
+    public void writeAndUnmarkedReadUsePrimary() {
+        DatabaseClient client = DatabaseClient.create(routing(ReplicaStrategy.ROUND_ROBIN, database("replica-0")));
+        assertEquals("primary", whoami(client).block());
+        client.sql("INSERT INTO whoami VALUES ('written')").fetch().rowsUpdated().block();
+        assertEquals(1L, client.sql("SELECT COUNT(*) FROM whoami WHERE name = 'written'").map(row -> row.get(0, Long.class)).one().block());
+    }
+
+    @Test
+    public void readOnlyUsesReplica() {
+        DatabaseClient client = DatabaseClient.create(routing(ReplicaStrategy.ROUND_ROBIN, database("replica-0")));
+        assertEquals("replica-0", ReactiveMySqlRoutingConnectionFactory.readOnly(whoami(client)).block());
+    }
+
+    //事务中的只读调用,以及包在事务外层的readOnly(),都使用主库
+    @Test
+    public void transactionUsesPrimary() {
+        ReactiveMySqlRoutingConnectionFactory routing = routing(ReplicaStrategy.ROUND_ROBIN, database("replica-0"));
+        DatabaseClient client = DatabaseClient.create(routing);
+        TransactionalOperator transactional = TransactionalOperator.create(new R2dbcTransactionManager(routing));
+        assertEquals("primary", ReactiveMySqlRoutingConnectionFactory.readOnly(whoami(client)).as(transactional::transactional).block());
+        assertEquals("primary", ReactiveMySqlRoutingConnectionFactory.readOnly(transactional.transactional(whoami(client))).block());
+    }
+
+    @Test
+    public void roundRobin() {
+        DatabaseClient client = DatabaseClient.create(routing(ReplicaStrategy.ROUND_ROBIN, database("replica-0"), database("replica-1")));
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 4; i++) names.add(ReactiveMySqlRoutingConnectionFactory.readOnly(whoami(client)).block());
+        assertEquals(List.of("replica-0", "replica-1", "replica-0", "replica-1"), names);
+    }
+
+    //replica-0的连接池中有一个连接被占用,选择replica-1
+    @Test
+    public void leastPending() {
+        ConnectionPool busy = pool(database("replica-0"));
+        ConnectionPool idle = pool(database("replica-1"));
+        DatabaseClient client = DatabaseClient.create(routing(ReplicaStrategy.LEAST_PENDING, busy, idle));
+        assertEquals("replica-0", ReactiveMySqlRoutingConnectionFactory.readOnly(whoami(client)).block());
+        Connection held = busy.create().block();
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("replica-1", ReactiveMySqlRoutingConnectionFactory.readOnly(whoami(client)).block());
+            }
+        } finally {
+            Mono.from(held.close()).block();
+        }
+    }
+
+    //复制延迟超过上限的从库不参与路由,恢复后重新参与;所有从库都不可用时回到主库
+    @Test
+    public void laggingReplicaIsExcluded() throws InterruptedException {
+        AtomicLong lag0 = new AtomicLong(0);
+        AtomicLong lag1 = new AtomicLong(60);
+        ReactiveMySqlRoutingConnectionFactory routing = routing(ReplicaStrategy.ROUND_ROBIN, lagging(database("replica-0"), lag0), lagging(database("replica-1"), lag1))
+                .checkLag(10, 1);
+        DatabaseClient client = DatabaseClient.create(routing);
+        awaitReads(client, List.of("replica-0", "replica-0", "replica-0"));
+        lag0.set(60);
+        awaitReads(client, List.of("primary", "primary", "primary"));
+        lag1.set(0);
+        awaitReads(client, List.of("replica-1", "replica-1", "replica-1"));
+    }
+
+    private ReactiveMySqlRoutingConnectionFactory routing(ReplicaStrategy strategy, ConnectionFactory... replicas) {
+        ReactiveMySqlRoutingConnectionFactory routing = new ReactiveMySqlRoutingConnectionFactory(database("primary"), List.of(replicas), strategy);
+        routings.add(routing);
+        return routing;
+    }
+
+    //每次使用独立的库名,测试之间互不影响
+    private ConnectionFactory database(String name) {
+        CloseableConnectionFactory connectionFactory = H2ConnectionFactory.inMemory(name + "-" + UUID.randomUUID());
+        databases.add(connectionFactory);
+        DatabaseClient client = DatabaseClient.create(connectionFactory);
+        client.sql("CREATE TABLE whoami (name VARCHAR(32))").then()
+                .then(client.sql("INSERT INTO whoami VALUES ('" + name + "')").then())
+                .block();
+        return connectionFactory;
+    }
+
+    private static ConnectionPool pool(ConnectionFactory connectionFactory) {
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory).initialSize(0).maxSize(4).build());
+    }
+
+    //H2不支持SHOW SLAVE STATUS,改写为返回指定延迟的查询
+    private static ConnectionFactory lagging(ConnectionFactory target, AtomicLong lag) {
+        return new ConnectionFactory() {
+            @Override
+            public Publisher<? extends Connection> create() {
+                return Mono.from(target.create()).map(connection -> (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+                    if ("createStatement".equals(method.getName()) && "SHOW SLAVE STATUS".equals(args[0])) {
+                        return connection.createStatement("SELECT CAST(" + lag.get() + " AS BIGINT) AS Seconds_Behind_Master");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }));
+            }
+
+            @Override
+            public ConnectionFactoryMetadata getMetadata() {
+                return target.getMetadata();
+            }
+        };
+    }
+
+    private static Mono<String> whoami(DatabaseClient client) {
+        return client.sql(WHOAMI).map(row -> row.get(0, String.class)).one();
+    }
+
+    //延迟检查每秒一次,等待路由结果稳定
+    private static void awaitReads(DatabaseClient client, List<String> expected) throws InterruptedException {
+        List<String> names = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            names = new ArrayList<>();
+            for (int i = 0; i < expected.size(); i++) names.add(ReactiveMySqlRoutingConnectionFactory.readOnly(whoami(client)).block());
+            if (expected.equals(names)) return;
+            Thread.sleep(100);
+        }
+        assertEquals(expected, names);
+    }
+}
@@ -0,0 +1,130 @@
+package org.lambda.framework.repository.config;
+
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.lambda.framework.common.exception.EventException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.lambda.framework.repository.enums.RepositoryExceptionEnum.ES_REPOSITORY_MYSQL_103;
+
+/**
+ * @description: 分片路由,每个分片都是H2内存数据库,whoami表中只有分片自己的名字
+ **/
+public class ReactiveMySqlShardingConnectionFactoryTest {
+
+    private static final String WHOAMI = "SELECT name FROM whoami";
+
+    private final List<CloseableConnectionFactory> databases = new ArrayList<>();
+
+    @AfterEach
+    public void destroy() {
+        databases.forEach(e -> e.close().block());
+    }
+
+    //按organizationId路由到 floorMod(hashCode, 分片数) 的分片
+    @Test
+    public void routeByOrganizationId() {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding(3);
+        DatabaseClient client = DatabaseClient.create(sharding);
+        for (long organizationId = -5; organizationId < 20; organizationId++) {
+            Organization organization = new Organization(organizationId);
+            String expected = "shard-" + Math.floorMod(Long.hashCode(organizationId), 3);
+            assertEquals(expected, sharding.route(whoami(client), organization).block());
+            assertEquals(expected, ReactiveMySqlShardingConnectionFactory.shard(whoami(client), organizationId).block());
+            assertEquals(expected, "shard-" + sharding.index(organization));
+        }
+    }
+
+    //写入落在分片键对应的分片,其他分片没有这条数据
+    @Test
+    public void writeStaysOnShard() {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding(3);
+        DatabaseClient client = DatabaseClient.create(sharding);
+        Organization organization = new Organization(7L);
+        sharding.route(client.sql("INSERT INTO whoami VALUES ('written')").then(), organization).block();
+        for (int i = 0; i < sharding.size(); i++) {
+            Long count = sharding.at(client.sql("SELECT COUNT(*) FROM whoami WHERE name = 'written'").map(row -> row.get(0, Long.class)).one(), i).block();
+            assertEquals(i == sharding.index(organization) ? 1L : 0L, count);
+        }
+    }
+
+    //多个分片时没有分片键直接报错,不会默认落到某个分片
+    @Test
+    public void missingKeyIsRejected() {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding(3);
+        DatabaseClient client = DatabaseClient.create(sharding);
+        assertRejected(assertThrows(RuntimeException.class, () -> whoami(client).block()));
+        assertRejected(assertThrows(RuntimeException.class, () -> sharding.route(whoami(client), new Organization(null)).block()));
+        assertRejected(assertThrows(EventException.class, () -> sharding.index(new Organization(null))));
+    }
+
+    //只有一个分片时不需要分片键
+    @Test
+    public void singleShardNeedsNoKey() {
+        DatabaseClient client = DatabaseClient.create(sharding(1));
+        assertEquals("shard-0", whoami(client).block());
+    }
+
+    //跨分片查询只能通过scatter()显式发起,结果来自所有分片
+    @Test
+    public void scatterIsExplicit() {
+        ReactiveMySqlShardingConnectionFactory sharding = sharding(3);
+        DatabaseClient client = DatabaseClient.create(sharding);
+        List<String> names = sharding.scatter(() -> client.sql(WHOAMI).map(row -> row.get(0, String.class)).all()).sort().collectList().block();
+        assertEquals(List.of("shard-0", "shard-1", "shard-2"), names);
+        assertRejected(assertThrows(RuntimeException.class, () -> client.sql(WHOAMI).map(row -> row.get(0, String.class)).all().collectList().block()));
+    }
+
+    private ReactiveMySqlShardingConnectionFactory sharding(int size) {
+        List<ConnectionFactory> shards = new ArrayList<>();
+        for (int i = 0; i < size; i++) shards.add(database("shard-" + i));
+        return new ReactiveMySqlShardingConnectionFactory(shards, ShardKeyExtractor.property("organizationId"));
+    }
+
+    //每次使用独立的库名,测试之间互不影响
+    private ConnectionFactory database(String name) {
+        CloseableConnectionFactory connectionFactory = H2ConnectionFactory.inMemory(name + "-" + UUID.randomUUID());
+        databases.add(connectionFactory);
+        DatabaseClient client = DatabaseClient.create(connectionFactory);
+        client.sql("CREATE TABLE whoami (name VARCHAR(32))").then()
+                .then(client.sql("INSERT INTO whoami VALUES ('" + name + "')").then())
+                .block();
+        return connectionFactory;
+    }
+
+    private static Mono<String> whoami(DatabaseClient client) {
+        return client.sql(WHOAMI).map(row -> row.get(0, String.class)).one();
+    }
+
+    //DatabaseClient把获取连接的错误包装为DataAccessResourceFailureException,原因是ES_REPOSITORY_MYSQL_103
+    private static void assertRejected(Throwable e) {
+        Throwable cause = e;
+        while (cause != null && !(cause instanceof EventException)) cause = cause.getCause();
+        assertInstanceOf(EventException.class, cause, e.toString());
+        assertEquals(ES_REPOSITORY_MYSQL_103.getCode(), ((EventException) cause).getCode());
+    }
+
+    public static class Organization {
+
+        private final Long organizationId;
+
+        public Organization(Long organizationId) {
+            this.organizationId = organizationId;
+        }
+
+        public Long getOrganizationId() {
+            return organizationId;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.lambda.framework.repository.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @description: 语句追踪,目标为H2内存数据库,表中预先写入3行,建表和写入不经过追踪
+ **/
+public class ReactiveMySqlTracingConnectionFactoryTest {
+
+    private static final String SELECT = "SELECT id FROM item WHERE id > ?";
+
+    private CloseableConnectionFactory database;
+
+    private SimpleMeterRegistry registry;
+
+    private DatabaseClient client;
+
+    private ReactiveMySqlTracingConnectionFactory tracing;
+
+    @BeforeEach
+    public void create() {
+        database = H2ConnectionFactory.inMemory("tracing-" + UUID.randomUUID());
+        DatabaseClient raw = DatabaseClient.create(database);
+        raw.sql("CREATE TABLE item (id BIGINT)").then()
+                .then(raw.sql("INSERT INTO item VALUES (1), (2), (3)").then())
+                .block();
+        registry = new SimpleMeterRegistry();
+        //阈值为0,每条语句都计入慢查询
+        ReactiveMySqlStatementMetrics metrics = new ReactiveMySqlStatementMetrics(0, false, 500, 100);
+        metrics.bindTo(registry);
+        tracing = new ReactiveMySqlTracingConnectionFactory(database, metrics);
+        client = DatabaseClient.create(tracing);
+    }
+
+    //H2内存库保留一个连接,不关闭时进程退出会等待
+    @AfterEach
+    public void destroy() {
+        database.close().block();
+    }
+
+    //按归一化的SQL记录耗时和行数,获取连接计时,慢查询样本中没有字面量
+    @Test
+    public void queryRecordsRowsAndAcquire() {
+        assertEquals(3, client.sql("SELECT id FROM item WHERE id > 0").map(row -> row.get(0, Long.class)).all().count().block());
+        assertEquals(1, timer(SELECT, "success"));
+        assertEquals(3, registry.get("lambda.repository.mysql.statement.rows").tag("sql", SELECT).summary().totalAmount());
+        assertEquals(1, registry.get("lambda.repository.mysql.connection.acquire").timer().count());
+        assertEquals(SELECT, tracing.getMetrics().getSlowQueries().get(0).getSql());
+        assertEquals(3, tracing.getMetrics().getSlowQueries().get(0).getRows());
+    }
+
+    //只取第一行后取消,语句仍然记录一次
+    @Test
+    public void cancelledQueryIsRecorded() {
+        assertEquals(1L, client.sql("SELECT id FROM item WHERE id > 0 ORDER BY id").map(row -> row.get(0, Long.class)).first().block());
+        assertEquals(1, timer(SELECT + " ORDER BY id", "success"));
+    }
+
+    @Test
+    public void failureIsRecorded() {
+        assertThrows(Exception.class, () -> client.sql("SELECT missing FROM item WHERE id > 0").fetch().all().blockLast());
+        assertEquals(1, timer("SELECT missing FROM item WHERE id > ?", "failure"));
+        assertEquals(0, timer("SELECT missing FROM item WHERE id > ?", "success"));
+    }
+
+    //事务的开始、提交和回滚经过包装的连接委托给目标连接
+    @Test
+    public void transactionIsDelegated() {
+        TransactionalOperator transactional = TransactionalOperator.create(new R2dbcTransactionManager(tracing));
+        transactional.transactional(client.sql("INSERT INTO item VALUES (4)").fetch().rowsUpdated()).block();
+        Mono<Long> rollback = client.sql("INSERT INTO item VALUES (5)").fetch().rowsUpdated()
+                .then(Mono.error(new IllegalStateException("rollback")));
+        assertThrows(IllegalStateException.class, () -> transactional.transactional(rollback).block());
+        assertEquals(4L, client.sql("SELECT COUNT(*) FROM item").map(row -> row.get(0, Long.class)).one().block());
+        assertEquals(2, timer("INSERT INTO item VALUES (?)", "success"));
+    }
+
+    private long timer(String sql, String result) {
+        return registry.get("lambda.repository.mysql.statement").tag("sql", sql).tag("result", result).timer().count();
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.lambda.framework.common.exception.Assert;
 import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.common.exception.StacklessEventException;
 import org.lambda.framework.common.exception.basic.GlobalException;
 import org.lambda.framework.common.util.sample.JsonUtil;
 import org.lambda.framework.common.util.sample.MD5Util;
@@ -15,12 +16,17 @@ import org.lambda.framework.security.container.SecurityAuthToken;
 import org.lambda.framework.security.container.SecurityLoginUser;
 import org.lambda.framework.security.contract.SecurityContract;
 import org.lambda.framework.security.enums.SecurityExceptionEnum;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -36,11 +42,46 @@ import static org.lambda.framework.security.enums.SecurityExceptionEnum.*;
 @Component
 public class SecurityPrincipalUtil {
 
-    private static String TOKEN_SUFFIX = "prefix";
+    private static String TOKEN_SUFFIX = "sessions";
+
+    //登陆在一个脚本中完成:淘汰同一设备、已过期以及超出数量上限的会话,写入新会话,刷新key的过期时间,登记到机构索引
+    //读取与写入之间不会插入其他登陆,并发登陆也不会超过会话数上限
+    //升级前按字符串保存的旧会话直接删除
+    //KEYS[1] 用户会话hash KEYS[2] 机构索引(可选)
+    //ARGV[1] token ARGV[2] 会话json ARGV[3] 设备 ARGV[4] 当前毫秒 ARGV[5] 有效秒数 ARGV[6] 会话数上限 ARGV[7] 机构索引成员(json格式的KEYS[1])
+    private static final RedisScript<Long> LOGIN_SCRIPT = RedisScript.of(
+            "if redis.call('TYPE', KEYS[1]).ok ~= 'hash' then redis.call('DEL', KEYS[1]) end\n" +
+            "local expired = tonumber(ARGV[4]) - tonumber(ARGV[5]) * 1000\n" +
+            "local entries = redis.call('HGETALL', KEYS[1])\n" +
+            "local remain = {}\n" +
+            "for i = 1, #entries, 2 do\n" +
+            "  local ok, session = pcall(cjson.decode, entries[i + 1])\n" +
+            "  local active = ok and type(session) == 'table' and tonumber(session['activeTime']) or nil\n" +
+            "  if active == nil or active < expired or session['device'] == ARGV[3] then\n" +
+            "    redis.call('HDEL', KEYS[1], entries[i])\n" +
+            "  else\n" +
+            "    table.insert(remain, {entries[i], active})\n" +
+            "  end\n" +
+            "end\n" +
+            "table.sort(remain, function(a, b) return a[2] < b[2] end)\n" +
+            "for i = 1, #remain + 1 - tonumber(ARGV[6]) do\n" +
+            "  redis.call('HDEL', KEYS[1], remain[i][1])\n" +
+            "end\n" +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[5])\n" +
+            "if #KEYS > 1 then\n" +
+            "  redis.call('SADD', KEYS[2], ARGV[7])\n" +
+            "  redis.call('EXPIRE', KEYS[2], ARGV[5])\n" +
+            "end\n" +
+            "return 1", Long.class);
 
     @Resource(name = "securityAuthRedisOperation")
     private ReactiveRedisOperation securityAuthRedisOperation;
 
+    //每个用户最多同时保留的会话(设备)数
+    @Value("${lambda.security.max-sessions:5}")
+    private Integer maxSessions;
+
     public Mono<String> getPrincipal() {
         return this.getServerRequestToken().flatMap(reqKey->{
             return this.getSecurityAuthTokenKey(reqKey).flatMap(key->{
@@ -52,27 +93,42 @@ public class SecurityPrincipalUtil {
     }
     public <T extends SecurityLoginUser>Mono<T> getPrincipal2Object(Class<T> clazz) {
         return this.getPrincipal().flatMap(e -> {
-            return Mono.just(JsonUtil.stringToObj(e,clazz).orElseThrow(()->new EventException(ES_SECURITY_004)));
-        }).switchIfEmpty(Mono.error(new EventException(ES_SECURITY_004)));
+            return Mono.just(JsonUtil.stringToObj(e,clazz).orElseThrow(()->StacklessEventException.of(ES_SECURITY_004)));
+        }).switchIfEmpty(Mono.error(StacklessEventException.of(ES_SECURITY_004)));
     }
 
     ;
 
     public <T extends SecurityLoginUser> Mono<String> setPrincipal(T t) {
+        return this.setPrincipal(t, SecurityContract.LAMBDA_SECURITY_DEFAULT_DEVICE);
+    }
+
+    //一个用户可以在多个设备登陆,每个设备保留一个会话,会话数超出上限时淘汰登陆最早的设备
+    public <T extends SecurityLoginUser> Mono<String> setPrincipal(T t, String device) {
         if (t == null) {
             throw new EventException(SecurityExceptionEnum.ES_SECURITY_002);
         }
         if (t.getId() == null) {
             throw new EventException(SecurityExceptionEnum.ES_SECURITY_002);
         }
+        String _device = StringUtils.isBlank(device) ? SecurityContract.LAMBDA_SECURITY_DEFAULT_DEVICE : device;
         String principal = JsonUtil.objToString(t);
-        //为了保证一个用户只会生成一个token,token唯一性
+        //用户的所有会话都保存在同一个hash中,field为token
         String keyHead = SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_KEY + MD5Util.hash(t.getId().toString()) + ".";
         String keySuffix = MD5Util.hash(t.getId().toString()+"."+SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_SALT + "." + UUIDUtil.get());
+        String sessionKey = keyHead + TOKEN_SUFFIX;
+        long now = System.currentTimeMillis();
         LambdaSecurityAuthToken lambdaSecurityAuthToken = new LambdaSecurityAuthToken();
         lambdaSecurityAuthToken.setPrincipal(principal);
         lambdaSecurityAuthToken.setToken(keySuffix);
-        return securityAuthRedisOperation.set(keyHead + TOKEN_SUFFIX, lambdaSecurityAuthToken, SecurityContract.LAMBDA_SECURITY_TOKEN_TIME_SECOND.longValue()).then(Mono.just(keyHead + keySuffix));
+        lambdaSecurityAuthToken.setDevice(_device);
+        lambdaSecurityAuthToken.setActiveTime(now);
+        List<String> keys = t.getOrganizationId() == null ? List.of(sessionKey) : List.of(sessionKey, getOrganizationKey(t.getOrganizationId()));
+        //hash的value和set的成员按redis序列化器的json格式写入,与hashEntries、setMembers读取的格式一致
+        List<String> args = List.of(keySuffix, JsonUtil.objToString(lambdaSecurityAuthToken), _device, String.valueOf(now),
+                String.valueOf(SecurityContract.LAMBDA_SECURITY_TOKEN_TIME_SECOND), String.valueOf(maxSessions), JsonUtil.objToString(sessionKey));
+        return securityAuthRedisOperation.<String,Long>script(LOGIN_SCRIPT, keys, args)
+                .then(Mono.just(keyHead + keySuffix));
     }
 
     public <T extends SecurityLoginUser> Mono<Void> updatePrincipal(T t) {
@@ -80,10 +136,12 @@ public class SecurityPrincipalUtil {
             return this.getSecurityAuthTokenKey(reqKey).flatMap(key->{
                 return this.getSecurityAuthToken(key).flatMap(token->{
                     token.setPrincipal(JsonUtil.objToString(t));
-                    return securityAuthRedisOperation.update(key,token)
+                    return securityAuthRedisOperation.hashSet(key,token.getToken(),token)
                             .switchIfEmpty(Mono.error(new EventException(ES_SECURITY_011)))
-                            .flatMap(flag->{
-                                if(!flag)return Mono.error(new EventException(ES_SECURITY_011));
+                            .flatMap(created->{
+                                //field是新建的,说明会话在读取之后已经被注销,不能复活
+                                if(created)return securityAuthRedisOperation.hashDelete(key,List.of(token.getToken()))
+                                        .then(Mono.error(new EventException(ES_SECURITY_011)));
                                 return Mono.just(token.getPrincipal());
                             });
                 });
@@ -94,11 +152,96 @@ public class SecurityPrincipalUtil {
     public Mono<Void> deletePrincipal() {
         return this.getServerRequestToken().flatMap(reqKey->{
             return this.getSecurityAuthTokenKey(reqKey).flatMap(key->{
-                return securityAuthRedisOperation.delete(key);
+                return securityAuthRedisOperation.hashDelete(key,List.of(getRealToken(reqKey)));
             }).then();
         });
     }
 
+    //查询用户在所有设备上的会话,不返回token
+    public Flux<LambdaSecurityAuthToken> getSessions(Long userId) {
+        Assert.verify(userId,ES_SECURITY_002);
+        return this.getSessions(getSessionKey(userId)).filter(SecurityPrincipalUtil::alive).map(SecurityPrincipalUtil::mask);
+    }
+
+    //注销用户在某个设备上的会话
+    public Mono<Void> deleteSession(Long userId, String device) {
+        Assert.verify(userId,ES_SECURITY_002);
+        Assert.verify(device,ES_SECURITY_002);
+        String sessionKey = getSessionKey(userId);
+        return this.getSessions(sessionKey)
+                .filter(session->device.equals(session.getDevice()))
+                .map(LambdaSecurityAuthToken::getToken)
+                .collectList()
+                .flatMap(tokens->securityAuthRedisOperation.hashDelete(sessionKey,tokens))
+                .then();
+    }
+
+    //注销用户的所有会话,只删除一个key,不需要SCAN,同时从会话所属机构的索引中移除
+    public Mono<Void> deleteSessions(Long userId) {
+        Assert.verify(userId,ES_SECURITY_002);
+        String sessionKey = getSessionKey(userId);
+        return this.getSessions(sessionKey)
+                .map(session->JsonUtil.stringToObj(session.getPrincipal(), Map.class).map(principal->principal.get("organizationId")).orElse(null))
+                .filter(organizationId->organizationId != null)
+                .distinct()
+                .concatMap(organizationId->securityAuthRedisOperation.setRemove(getOrganizationKey(Long.valueOf(organizationId.toString())), sessionKey))
+                .then(securityAuthRedisOperation.delete(sessionKey))
+                .then();
+    }
+
+    //查询机构下所有用户的会话,各个用户的hash读取在同一连接上流水线执行
+    public Flux<LambdaSecurityAuthToken> getOrganizationSessions(Long organizationId) {
+        Assert.verify(organizationId,ES_SECURITY_002);
+        return securityAuthRedisOperation.<String,String>setMembers(getOrganizationKey(organizationId))
+                .flatMap(this::getSessions)
+                .filter(SecurityPrincipalUtil::alive)
+                .map(SecurityPrincipalUtil::mask);
+    }
+
+    //注销机构下所有用户的会话,所有key在一条DEL命令中删除
+    public Mono<Void> deleteOrganizationSessions(Long organizationId) {
+        Assert.verify(organizationId,ES_SECURITY_002);
+        String organizationKey = getOrganizationKey(organizationId);
+        return securityAuthRedisOperation.<String,String>setMembers(organizationKey)
+                .collectList()
+                .flatMap(keys->{
+                    List<String> _keys = new ArrayList<>(keys);
+                    _keys.add(organizationKey);
+                    return securityAuthRedisOperation.deleteAll(_keys);
+                }).then();
+    }
+
+    private Flux<LambdaSecurityAuthToken> getSessions(String sessionKey) {
+        return securityAuthRedisOperation.<String,String,Object>hashEntries(sessionKey)
+                .map(entry->JsonUtil.mapToObj((Map) entry.getValue(), LambdaSecurityAuthToken.class).orElseThrow(() -> StacklessEventException.of(ES_SECURITY_003)));
+    }
+
+    //每个会话从登陆时刻起有效LAMBDA_SECURITY_TOKEN_TIME_SECOND秒,用户在其他设备登陆刷新hash的过期时间不会延长已有会话
+    private static boolean alive(LambdaSecurityAuthToken session) {
+        return session.getActiveTime() != null
+                && session.getActiveTime() >= System.currentTimeMillis() - SecurityContract.LAMBDA_SECURITY_TOKEN_TIME_SECOND * 1000;
+    }
+
+    private static LambdaSecurityAuthToken mask(LambdaSecurityAuthToken session) {
+        session.setToken(null);
+        return session;
+    }
+
+    private static String getSessionKey(Long userId) {
+        return SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_KEY + MD5Util.hash(userId.toString()) + "." + TOKEN_SUFFIX;
+    }
+
+    private static String getOrganizationKey(Long organizationId) {
+        return SecurityContract.LAMBDA_SECURITY_AUTH_ORGANIZATION_KEY + organizationId;
+    }
+
+    private static String getRealToken(String requestToken) {
+        // 查找最后一个点的位置
+        int lastIndex = requestToken.lastIndexOf('.');
+        // 如果找到了点，则返回点之后的子字符串，否则返回空字符串或其他适当的默认值
+        return lastIndex != -1 ? requestToken.substring(lastIndex + 1) : null;
+    }
+
     private static Mono<ServerHttpRequest> getServerHttpRequest() {
         return Mono.deferContextual(Mono::just)
                 .map(contextView -> contextView.get(ServerWebExchange.class).getRequest());
@@ -108,22 +251,22 @@ public class SecurityPrincipalUtil {
         return this.getServerHttpRequest().flatMap(e -> {
             List headers = e.getHeaders().get(SecurityContract.AUTH_TOKEN_NAMING);
             if(headers == null || headers.size() == 0 || headers.get(0) == null){
-                return Mono.error(new EventException(ES_SECURITY_003));
+                return Mono.error(StacklessEventException.of(ES_SECURITY_003));
             }
             return Mono.just(e.getHeaders().get(AUTH_TOKEN_NAMING).get(0));
-        }).switchIfEmpty(Mono.error(new EventException(ES_SECURITY_003)));
+        }).switchIfEmpty(Mono.error(StacklessEventException.of(ES_SECURITY_003)));
     }
     private Mono<String> getSecurityAuthTokenKey(String requestToken) {
             Assert.verify(requestToken,ES_SECURITY_003);
             if (!(Pattern.compile(SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_REGEX).matcher(requestToken).matches()))
-                throw new EventException(SecurityExceptionEnum.ES_SECURITY_007);
+                throw StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_007);
             //对token进行解析
             // 在字符串中查找最后一个点的位置
             int lastDotIndex = requestToken.lastIndexOf('.');
             // 如果找到了点，则返回点之前的子字符串，否则返回原始字符串
             String token = lastDotIndex != -1 ? requestToken.substring(0, lastDotIndex + 1) : null;
             if (StringUtils.isBlank(token)) {
-                return Mono.error(new EventException(ES_SECURITY_003));
+                return Mono.error(StacklessEventException.of(ES_SECURITY_003));
             }
             token = token + TOKEN_SUFFIX;
             return Mono.just(token);
@@ -131,21 +274,25 @@ public class SecurityPrincipalUtil {
     private Mono<LambdaSecurityAuthToken> getSecurityAuthToken(String key) {
         Assert.verify(key,ES_SECURITY_003);
         return this.getServerRequestToken().flatMap(rqtoken->{
-            return securityAuthRedisOperation.get(key).flatMap(tokenBean -> {
-                LambdaSecurityAuthToken lambdaSecurityAuthToken = JsonUtil.mapToObj((Map) tokenBean, LambdaSecurityAuthToken.class).orElseThrow(() -> new EventException(ES_SECURITY_003));
+            String realToken = getRealToken(rqtoken);
+            if (StringUtils.isBlank(realToken)) return Mono.error(StacklessEventException.of(ES_SECURITY_003));
+            return securityAuthRedisOperation.hashGet(key,realToken).flatMap(tokenBean -> {
+                LambdaSecurityAuthToken lambdaSecurityAuthToken = JsonUtil.mapToObj((Map) tokenBean, LambdaSecurityAuthToken.class).orElseThrow(() -> StacklessEventException.of(ES_SECURITY_003));
                 if (StringUtils.isBlank(lambdaSecurityAuthToken.getToken())) {
-                    return Mono.error(new EventException(ES_SECURITY_003));
+                    return Mono.error(StacklessEventException.of(ES_SECURITY_003));
                 }
-                // 查找最后一个点的位置
-                int lastIndex = rqtoken.lastIndexOf('.');
-                // 如果找到了点，则返回点之后的子字符串，否则返回空字符串或其他适当的默认值
-                String realToken = lastIndex != -1 ? rqtoken.substring(lastIndex + 1) : null;
-                if (StringUtils.isBlank(realToken)) return Mono.error(new EventException(ES_SECURITY_003));
                 //比较token
                 if (!lambdaSecurityAuthToken.getToken().equals(realToken))
-                    return Mono.error(new EventException(ES_SECURITY_003));
+                    return Mono.error(StacklessEventException.of(ES_SECURITY_003));
+                //会话已过期,顺带从hash中删除
+                if (!alive(lambdaSecurityAuthToken))
+                    return securityAuthRedisOperation.hashDelete(key,List.of(realToken))
+                            .then(Mono.error(StacklessEventException.of(ES_SECURITY_003)));
                 return Mono.just(lambdaSecurityAuthToken);
-            }).switchIfEmpty(Mono.error(new EventException(ES_SECURITY_003)));
+            })
+            //升级前按字符串保存的旧会话,类型不匹配,视为无效的token
+            .onErrorResume(RedisSystemException.class, e -> Mono.error(StacklessEventException.of(ES_SECURITY_003)))
+            .switchIfEmpty(Mono.error(StacklessEventException.of(ES_SECURITY_003)));
         });
     }
 }
@@ -1,10 +1,12 @@
 package org.lambda.framework.security.config;
 
-import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.common.exception.StacklessEventException;
 import org.lambda.framework.security.container.SecurityLoginUser;
 import org.lambda.framework.security.enums.SecurityExceptionEnum;
 import org.lambda.framework.security.manger.SecurityAuthManager;
 import org.lambda.framework.security.manger.SecurityAutzManager;
+import org.lambda.framework.security.manger.SecurityThrottleManager;
+import org.lambda.framework.security.matcher.SecurityPermitUrlMatcher;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
@@ -13,6 +15,7 @@ import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authorization.ReactiveAuthorizationManager;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.server.SecurityWebFilterChain;
@@ -96,7 +99,15 @@ public class SecurityConfig {
         return source;
     }
     @Bean
-    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,ReactiveAuthorizationManager autzManager) {
+    public SecurityPermitUrlMatcher securityPermitUrlMatcher() {
+        return new SecurityPermitUrlMatcher(permitUrls);
+    }
+    @Bean
+    public SecurityThrottleManager securityThrottleManager(SecurityPermitUrlMatcher securityPermitUrlMatcher) {
+        return new SecurityThrottleManager(securityPermitUrlMatcher);
+    }
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,ReactiveAuthorizationManager autzManager,SecurityPermitUrlMatcher securityPermitUrlMatcher,SecurityThrottleManager securityThrottleManager) {
         http.httpBasic(e->e.disable());
         http.formLogin(e->e.disable());
         http.logout(e->e.disable());
@@ -107,9 +118,12 @@ public class SecurityConfig {
         //禁用请求换成，禁用session
         http.requestCache(e->e.requestCache(NoOpServerRequestCache.getInstance()));
         http.securityContextRepository(NoOpServerSecurityContextRepository.getInstance());
-        http.exceptionHandling(e->e.authenticationEntryPoint((a,b)->{throw new EventException(SecurityExceptionEnum.ES_SECURITY_000);}));
-        http.exceptionHandling(e->e.accessDeniedHandler((a,b)->{throw new EventException(SecurityExceptionEnum.ES_SECURITY_001);}));
-        http.authorizeExchange(e->e.pathMatchers(permitUrls).permitAll());
+        http.exceptionHandling(e->e.authenticationEntryPoint((a,b)->{throw StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_000);}));
+        http.exceptionHandling(e->e.accessDeniedHandler((a,b)->{throw StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_001);}));
+        //permit-urls编译为前缀树统一匹配,避免逐个PathPattern线性匹配
+        http.authorizeExchange(e->e.matchers(securityPermitUrlMatcher).permitAll());
+        //认证失败限流,在授权(访问redis)之前拦截
+        http.addFilterBefore(securityThrottleManager::filter, SecurityWebFiltersOrder.AUTHORIZATION);
         //http.addFilterAt(authenticationWebFilter, SecurityWebFiltersOrder.AUTHENTICATION);
         http.authorizeExchange(e->e.anyExchange().access(autzManager));
         return http.build();
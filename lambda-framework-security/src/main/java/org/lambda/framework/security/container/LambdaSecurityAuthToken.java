@@ -8,4 +8,8 @@ import java.io.Serializable;
 public class LambdaSecurityAuthToken<T extends SecurityLoginUser> implements Serializable {
     private String principal;
     private String token;
+    //登陆设备,同一设备只保留一个会话
+    private String device;
+    //登陆时间,会话数超出上限时淘汰最早的设备
+    private Long activeTime;
 }
@@ -9,6 +9,8 @@ public class SecurityContract {
     public static final String LAMBDA_SECURITY_AUTH_TOKEN_SALT  = "QWERTYUIOPasdfghjklZXCVBNM<>?";
     public static final Long LAMBDA_SECURITY_TOKEN_TIME_SECOND = 2592000L;
     public static final String LAMBDA_SECURITY_AUTH_TOKEN_KEY = "lambda.security.auth-token.";
+    public static final String LAMBDA_SECURITY_AUTH_ORGANIZATION_KEY = "lambda.security.auth-organization.";
+    public static final String LAMBDA_SECURITY_DEFAULT_DEVICE = "default";
     public static final String LAMBDA_SECURITY_AUTH_TOKEN_REGEX = LAMBDA_SECURITY_AUTH_TOKEN_KEY+"[a-zA-Z\\d]+\\.[a-zA-Z\\d]+";
 
     public static final String LAMBDA_SECURITY_EMPTY_STR = "";
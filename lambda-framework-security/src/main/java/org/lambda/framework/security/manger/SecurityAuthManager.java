@@ -3,7 +3,7 @@ package org.lambda.framework.security.manger;
 
 import jakarta.annotation.Resource;
 import org.apache.commons.lang3.StringUtils;
-import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.common.exception.StacklessEventException;
 import org.lambda.framework.redis.operation.ReactiveRedisOperation;
 import org.lambda.framework.security.SecurityPrincipalUtil;
 import org.lambda.framework.security.container.SecurityAuthToken;
@@ -35,16 +35,16 @@ public abstract class SecurityAuthManager implements SecurityAuthVerify {
         //converter
         ServerWebExchange exchange = authorizationContext.getExchange();
         String authToken = exchange.getRequest().getHeaders().getFirst(SecurityContract.AUTH_TOKEN_NAMING);
-        if(StringUtils.isBlank(authToken))throw new EventException(SecurityExceptionEnum.ES_SECURITY_003);
+        if(StringUtils.isBlank(authToken))throw StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_003);
         //authentication
         //令牌与库中不匹配
         return securityPrincipalUtil.getPrincipal().flatMap(principal -> {
-            if(StringUtils.isBlank(principal.toString()))return Mono.error(new EventException(ES_SECURITY_004));
+            if(StringUtils.isBlank(principal.toString()))return Mono.error(StacklessEventException.of(ES_SECURITY_004));
             //刷新TOKEN存活时间 保持登陆
             //更新SecurityContext中的Authentication信息
-            if(!verify(principal)) return Mono.error(new EventException(ES_SECURITY_000));
+            if(!verify(principal)) return Mono.error(StacklessEventException.of(ES_SECURITY_000));
             return securityAuthRedisOperation.expire(authToken, LAMBDA_SECURITY_TOKEN_TIME_SECOND)
                     .then(Mono.just(SecurityAuthToken.builder().principal(principal.toString()).credentials(authToken).authenticated(true).build()));
-       }).switchIfEmpty(Mono.error(new EventException(ES_SECURITY_004)));
+       }).switchIfEmpty(Mono.error(StacklessEventException.of(ES_SECURITY_004)));
     }
 }
@@ -4,6 +4,7 @@ package org.lambda.framework.security.manger;
 import jakarta.annotation.Resource;
 import org.apache.commons.lang3.StringUtils;
 import org.lambda.framework.common.exception.EventException;
+import org.lambda.framework.common.exception.StacklessEventException;
 import org.lambda.framework.redis.operation.ReactiveRedisOperation;
 import org.lambda.framework.security.contract.SecurityContract;
 import org.lambda.framework.security.enums.SecurityExceptionEnum;
@@ -47,7 +48,7 @@ public abstract class SecurityAutzManager implements ReactiveAuthorizationManage
     public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext authorizationContext) {
 
          return securityAuthManager.authenticate(authorizationContext).flatMap(auth->{
-            if(!auth.isAuthenticated()) return Mono.error(new EventException(SecurityExceptionEnum.ES_SECURITY_000));
+            if(!auth.isAuthenticated()) return Mono.error(StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_000));
             String currentPath = authorizationContext.getExchange().getRequest().getURI().getPath();
             // redis可能获取信息发生错误，导致直接抛出异常。所以默认空值，用于判断permit_all_url逻辑;
             return securityAutzRedisOperation.get(currentPath)
@@ -58,17 +59,18 @@ public abstract class SecurityAutzManager implements ReactiveAuthorizationManage
                                 //如果路径权限树为空
                                 if(SecurityContract.LAMBDA_SECURITY_URL_AUTZ_MODEL_ALL.equals(urlAutzModel)){
                                     //配置了所有的经过认证都需要授权
-                                    return Mono.error(new EventException(SecurityExceptionEnum.ES_SECURITY_001));
+                                    return Mono.error(StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_001));
                                 }
                                 if(SecurityContract.LAMBDA_SECURITY_URL_AUTZ_MODEL_MAPPING.equals(urlAutzModel)){
                                     //配置了只有映射的URL经过认证才需要授权
                                     return Mono.just(currentPathAutzTree.toString());
                                 }
+                                //授权模式配置错误,保留栈信息便于排查
                                 return Mono.error(new EventException(ES_SECURITY_010));
                             }
                             return Mono.just(currentPathAutzTree.toString());
                         }).flatMap(currentPathAutzTree->{
-                            if(!verify(currentPathAutzTree,auth.getPrincipal().toString()))return Mono.error(new EventException(SecurityExceptionEnum.ES_SECURITY_001));
+                            if(!verify(currentPathAutzTree,auth.getPrincipal().toString()))return Mono.error(StacklessEventException.of(SecurityExceptionEnum.ES_SECURITY_001));
                             return Mono.just(new AuthorizationDecision(true));
                     });
          });
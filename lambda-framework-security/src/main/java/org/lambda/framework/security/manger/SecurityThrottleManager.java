@@ -0,0 +1,227 @@
+package org.lambda.framework.security.manger;
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.apache.commons.lang3.StringUtils;
+import org.lambda.framework.common.exception.basic.GlobalException;
+import org.lambda.framework.common.templete.ResponseTemplete;
+import org.lambda.framework.common.util.sample.JsonUtil;
+import org.lambda.framework.common.util.sample.UUIDUtil;
+import org.lambda.framework.redis.operation.ReactiveRedisOperation;
+import org.lambda.framework.security.contract.SecurityContract;
+import org.lambda.framework.security.matcher.SecurityPermitUrlMatcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.lambda.framework.security.enums.SecurityExceptionEnum.*;
+
+
+/**
+ * @description: 认证失败限流管理器
+ * 按客户端IP和客户端IP+令牌前缀(同一用户)分别维护本地令牌桶,每次认证失败消耗一个令牌
+ * 令牌前缀是公开且固定的,任何人都能构造,所以前缀的令牌桶必须带上IP,否则他人用错误令牌就能耗尽该用户的令牌桶,使用户本人的请求也被拒绝
+ * 令牌耗尽后,后续请求在进入SecurityAutzManager之前直接返回预先生成的响应,不再访问redis
+ * 开启集群模式后,失败次数同时写入redis滑动窗口,任一节点发现窗口超限即在本地封禁该客户端
+ **/
+public class SecurityThrottleManager {
+
+    private static final String THROTTLE_KEY = "lambda.security.throttle.";
+
+    private static final String THROTTLE_IP = "ip.";
+
+    private static final String THROTTLE_TOKEN = "token.";
+
+    //计入限流的认证失败
+    private static final Set<String> FAILURE_CODES = Set.of(ES_SECURITY_000.getCode(), ES_SECURITY_003.getCode(), ES_SECURITY_004.getCode(), ES_SECURITY_007.getCode());
+
+    //计入令牌前缀的认证失败,格式错误(ES_SECURITY_007)的令牌没有可信的前缀,只计入IP
+    private static final Set<String> TOKEN_FAILURE_CODES = Set.of(ES_SECURITY_000.getCode(), ES_SECURITY_003.getCode(), ES_SECURITY_004.getCode());
+
+    @Resource(name = "securityAuthRedisOperation")
+    private ReactiveRedisOperation securityAuthRedisOperation;
+
+    private final SecurityPermitUrlMatcher securityPermitUrlMatcher;
+
+    @Value("${lambda.security.throttle.enable:true}")
+    private Boolean enable;
+
+    //令牌桶容量,即允许的连续失败次数
+    @Value("${lambda.security.throttle.capacity:20}")
+    private Integer capacity;
+
+    //每分钟恢复的令牌数
+    @Value("${lambda.security.throttle.refill-per-minute:10}")
+    private Integer refillPerMinute;
+
+    //本地最多跟踪的客户端数,超出后淘汰最久未访问的
+    @Value("${lambda.security.throttle.max-clients:100000}")
+    private Integer maxClients;
+
+    //位于可信代理之后时,从该请求头读取客户端IP,为空则使用连接地址
+    @Value("${lambda.security.throttle.client-ip-header:}")
+    private String clientIpHeader;
+
+    @Value("${lambda.security.throttle.cluster.enable:false}")
+    private Boolean clusterEnable;
+
+    @Value("${lambda.security.throttle.cluster.window-seconds:60}")
+    private Long clusterWindowSeconds;
+
+    @Value("${lambda.security.throttle.cluster.limit:100}")
+    private Long clusterLimit;
+
+    private Cache<String, Bucket> buckets;
+
+    private byte[] rejected;
+
+    public SecurityThrottleManager(SecurityPermitUrlMatcher securityPermitUrlMatcher) {
+        this.securityPermitUrlMatcher = securityPermitUrlMatcher;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.buckets = CacheBuilder.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Math.max(1, capacity * 60L / Math.max(1, refillPerMinute)), TimeUnit.MINUTES)
+                .build();
+        ResponseTemplete responseTemplete = new ResponseTemplete();
+        responseTemplete.setServiceCode(ES_SECURITY_012.getCode());
+        responseTemplete.setServiceMessage(ES_SECURITY_012.getMessage());
+        this.rejected = JsonUtil.objToString(responseTemplete).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enable) return chain.filter(exchange);
+        return securityPermitUrlMatcher.matches(exchange).flatMap(result -> {
+            if (result.isMatch()) return chain.filter(exchange);
+            String ip = getClientIp(exchange.getRequest());
+            String ipKey = THROTTLE_IP + ip;
+            String tokenKey = getTokenKey(ip, exchange.getRequest());
+            if (!available(ipKey) || (tokenKey != null && !available(tokenKey))) return reject(exchange);
+            //认证异常可能在组装阶段同步抛出,defer后统一按错误信号处理
+            return Mono.defer(() -> chain.filter(exchange)).onErrorResume(e -> {
+                if (!(e instanceof GlobalException) || !FAILURE_CODES.contains(((GlobalException) e).getCode())) {
+                    return Mono.error(e);
+                }
+                boolean chargeToken = tokenKey != null && TOKEN_FAILURE_CODES.contains(((GlobalException) e).getCode());
+                return this.failure(ipKey).then(chargeToken ? this.failure(tokenKey) : Mono.empty()).then(Mono.error(e));
+            });
+        });
+    }
+
+    private boolean available(String key) {
+        Bucket bucket = buckets.getIfPresent(key);
+        return bucket == null || bucket.available();
+    }
+
+    private Mono<Void> failure(String key) {
+        Bucket bucket;
+        try {
+            bucket = buckets.get(key, () -> new Bucket(capacity, refillPerMinute));
+        } catch (Exception e) {
+            return Mono.empty();
+        }
+        bucket.consume();
+        if (!clusterEnable) return Mono.empty();
+        String windowKey = THROTTLE_KEY + key;
+        long now = System.currentTimeMillis();
+        long windowMillis = clusterWindowSeconds * 1000;
+        return securityAuthRedisOperation.zsetAdd(windowKey, now + "." + UUIDUtil.get(), now)
+                .then(securityAuthRedisOperation.zsetRemoveRangeByScore(windowKey, 0, now - windowMillis))
+                .then(securityAuthRedisOperation.expire(windowKey, clusterWindowSeconds))
+                .then(securityAuthRedisOperation.zsetSize(windowKey))
+                .doOnNext(count -> {
+                    //集群内失败次数超限,本地封禁至窗口结束
+                    if (count > clusterLimit) bucket.block(now + windowMillis);
+                })
+                //redis不可用时只依赖本地令牌桶
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(rejected)));
+    }
+
+    private String getClientIp(ServerHttpRequest request) {
+        if (StringUtils.isNotBlank(clientIpHeader)) {
+            String ip = request.getHeaders().getFirst(clientIpHeader);
+            if (StringUtils.isNotBlank(ip)) {
+                //X-Forwarded-For 取第一个地址
+                int index = ip.indexOf(',');
+                return (index == -1 ? ip : ip.substring(0, index)).trim();
+            }
+        }
+        InetSocketAddress address = request.getRemoteAddress();
+        if (address == null) return SecurityContract.LAMBDA_SECURITY_EMPTY_STR;
+        return address.getAddress() == null ? address.getHostString() : address.getAddress().getHostAddress();
+    }
+
+    //令牌前缀对应同一个用户,用于限制同一客户端针对单个用户的令牌猜测
+    private static String getTokenKey(String ip, ServerHttpRequest request) {
+        String authToken = request.getHeaders().getFirst(SecurityContract.AUTH_TOKEN_NAMING);
+        if (StringUtils.isBlank(authToken) || !authToken.startsWith(SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_KEY)) return null;
+        int lastDotIndex = authToken.lastIndexOf('.');
+        if (lastDotIndex <= SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_KEY.length()) return null;
+        String prefix = authToken.substring(SecurityContract.LAMBDA_SECURITY_AUTH_TOKEN_KEY.length(), lastDotIndex);
+        //正常的前缀是32位md5,过长的前缀不作为key保存
+        if (prefix.length() > 64) return null;
+        return THROTTLE_TOKEN + ip + "." + prefix;
+    }
+
+    private static class Bucket {
+        private final double capacity;
+        private final double refillPerMillis;
+        private double tokens;
+        private long lastRefill;
+        private long blockedUntil;
+
+        private Bucket(int capacity, int refillPerMinute) {
+            this.capacity = capacity;
+            this.refillPerMillis = refillPerMinute / 60000d;
+            this.tokens = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        private synchronized boolean available() {
+            long now = System.currentTimeMillis();
+            if (now < blockedUntil) return false;
+            refill(now);
+            return tokens >= 1;
+        }
+
+        private synchronized void consume() {
+            refill(System.currentTimeMillis());
+            if (tokens >= 1) tokens -= 1;
+            else tokens = 0;
+        }
+
+        private synchronized void block(long until) {
+            blockedUntil = Math.max(blockedUntil, until);
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMillis);
+                lastRefill = now;
+            }
+        }
+    }
+}
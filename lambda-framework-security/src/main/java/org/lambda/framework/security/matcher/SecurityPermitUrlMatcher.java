@@ -0,0 +1,145 @@
+package org.lambda.framework.security.matcher;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.web.server.util.matcher.OrServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.PathPatternParserServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * @description: permit-urls 匹配器
+ * 将所有放行路径编译为一棵前缀树,单次匹配的代价只与请求路径的元素数有关,与放行路径的数量无关
+ * 与 spring 的 PathPattern 使用相同的规则: 在 PathContainer 的元素上匹配,分隔符也是元素(/a//b 与 /a/b 不同,
+ * 不忽略末尾的 /),普通段与解码并去掉矩阵参数后的段比较
+ * 支持的段: 普通段、*(匹配单段,位于末尾时也匹配空段)、{var}(匹配单段)、位于末尾的 /** 与 /{*var}(匹配零个或多个段)
+ * 其余写法(段内混合通配如 *.html、user-{id},带正则的 {id:\d+},?,位于中间的 **)无法放入前缀树,交给 spring 的 PathPattern 逐个匹配
+ **/
+public class SecurityPermitUrlMatcher implements ServerWebExchangeMatcher {
+
+    private static final char PATH_SEPARATOR = '/';
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{[\\w-]+}");
+
+    private static final Pattern REST = Pattern.compile("\\*\\*|\\{\\*[\\w-]+}");
+
+    private final Node root = new Node();
+
+    private final ServerWebExchangeMatcher fallback;
+
+    public SecurityPermitUrlMatcher(String... permitUrls) {
+        List<ServerWebExchangeMatcher> fallbacks = new ArrayList<>();
+        if (permitUrls != null) {
+            for (String permitUrl : permitUrls) {
+                if (StringUtils.isBlank(permitUrl)) continue;
+                String pattern = permitUrl.trim();
+                if (!compile(pattern)) {
+                    fallbacks.add(new PathPatternParserServerWebExchangeMatcher(pattern));
+                }
+            }
+        }
+        this.fallback = fallbacks.isEmpty() ? null : new OrServerWebExchangeMatcher(fallbacks);
+    }
+
+    @Override
+    public Mono<MatchResult> matches(ServerWebExchange exchange) {
+        if (matches(exchange.getRequest().getPath().pathWithinApplication())) return MatchResult.match();
+        if (fallback != null) return fallback.matches(exchange);
+        return MatchResult.notMatch();
+    }
+
+    //只匹配前缀树中的放行路径,不包含交给PathPattern的部分
+    public boolean matches(PathContainer path) {
+        return match(root, path.elements(), 0);
+    }
+
+    //将路径放入前缀树,遇到无法表达的写法返回false
+    //与PathPatternParserServerWebExchangeMatcher一样,不以 / 开头的路径先补上 /
+    private boolean compile(String pattern) {
+        List<String> elements = parse(pattern.charAt(0) == PATH_SEPARATOR ? pattern : PATH_SEPARATOR + pattern);
+        //末尾的 /** 或 /{*var} 匹配剩余的所有元素,包括前面的分隔符
+        int size = elements.size();
+        boolean rest = size >= 2 && elements.get(size - 2) == null && elements.get(size - 1) != null && REST.matcher(elements.get(size - 1)).matches();
+        if (rest) size -= 2;
+        boolean star = !rest && size >= 2 && elements.get(size - 2) == null && "*".equals(elements.get(size - 1));
+        //变量名重复的路径由PathPattern解析时报错
+        Set<String> variables = new HashSet<>();
+        for (int i = 0; i < elements.size(); i++) {
+            String element = elements.get(i);
+            if (element == null) continue;
+            if (i < size && kind(element) == Kind.UNSUPPORTED) return false;
+            if (element.startsWith("{") && !variables.add(element.replace("*", ""))) return false;
+        }
+        Node node = root;
+        for (int i = 0; i < size; i++) {
+            String element = elements.get(i);
+            if (element == null) {
+                node = node.separator == null ? (node.separator = new Node()) : node.separator;
+                //末尾的 * 也匹配空段,即请求路径在这个分隔符处结束
+                if (star && i == size - 2) node.star = true;
+                continue;
+            }
+            node = kind(element) == Kind.LITERAL ? node.literals.computeIfAbsent(element, e -> new Node())
+                    : node.single == null ? (node.single = new Node()) : node.single;
+        }
+        if (rest) node.rest = true;
+        else node.terminal = true;
+        return true;
+    }
+
+    private boolean match(Node node, List<PathContainer.Element> elements, int index) {
+        if (node.rest && (index == elements.size() || elements.get(index) instanceof PathContainer.Separator)) return true;
+        if (index == elements.size()) return node.terminal || node.star;
+        PathContainer.Element element = elements.get(index);
+        if (element instanceof PathContainer.Separator) {
+            return node.separator != null && match(node.separator, elements, index + 1);
+        }
+        String segment = ((PathContainer.PathSegment) element).valueToMatch();
+        Node literal = node.literals.get(segment);
+        if (literal != null && match(literal, elements, index + 1)) return true;
+        return node.single != null && match(node.single, elements, index + 1);
+    }
+
+    //按PathContainer的方式拆分,分隔符为null,空段不产生元素
+    private static List<String> parse(String pattern) {
+        List<String> elements = new ArrayList<>();
+        int start = 0;
+        int length = pattern.length();
+        while (start < length) {
+            int end = pattern.indexOf(PATH_SEPARATOR, start);
+            if (end == -1) end = length;
+            if (end > start) elements.add(pattern.substring(start, end));
+            if (end < length) elements.add(null);
+            start = end + 1;
+        }
+        return elements;
+    }
+
+    private static Kind kind(String segment) {
+        if ("*".equals(segment) || VARIABLE.matcher(segment).matches()) return Kind.SINGLE;
+        if (StringUtils.containsAny(segment, '*', '?', '{', '}')) return Kind.UNSUPPORTED;
+        return Kind.LITERAL;
+    }
+
+    private enum Kind {
+        LITERAL, SINGLE, UNSUPPORTED
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>(4);
+        private Node separator;
+        private Node single;
+        private boolean terminal;
+        private boolean star;
+        private boolean rest;
+    }
+}
@@ -0,0 +1,150 @@
+package org.lambda.framework.security.matcher;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.web.server.util.matcher.OrServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.PathPatternParserServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PatternParseException;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @description: 前缀树匹配与spring逐个PathPattern匹配(OrServerWebExchangeMatcher)的对比,两者对每个请求路径的结果必须相同
+ **/
+public class SecurityPermitUrlMatcherTest {
+
+    private static final String[] PATTERN_SEGMENTS = {"a", "b", "api", "A", "*", "{id}", "{name}", "**", "{*rest}", "x.html", "*.html", "user-{id}", "{id:\\d+}", "?"};
+
+    private static final String[] PATH_SEGMENTS = {"a", "b", "api", "A", "%61", "1", "42", "x.html", "y.html", "user-1", "a;m=1", "%2F", "a%20b", "*"};
+
+    //末尾的 /**
+    @Test
+    public void tailDoubleStar() {
+        assertSame(patterns("/api/**"), "/api", "/api/", "/api/a", "/api/a/b/", "/apis", "/ap", "/", "/x/api/a");
+        assertSame(patterns("/**"), "/", "/a", "/a/b/c");
+    }
+
+    //位于中间的 ** 与 {*var} 在spring中是解析错误,前缀树交给PathPattern后同样报错
+    @Test
+    public void middleDoubleStarIsRejected() {
+        for (String pattern : new String[]{"/a/**/c", "/a/{*rest}/c"}) {
+            assertThrows(PatternParseException.class, () -> reference(pattern));
+            assertThrows(PatternParseException.class, () -> new SecurityPermitUrlMatcher(pattern));
+        }
+    }
+
+    @Test
+    public void variable() {
+        assertSame(patterns("/api/{id}", "/api/{id}/detail"), "/api/1", "/api/", "/api", "/api/1/", "/api/1/detail", "/api//detail", "/api/1/2");
+    }
+
+    @Test
+    public void captureRest() {
+        assertSame(patterns("/open/{*rest}"), "/open", "/open/", "/open/a", "/open/a/b/", "/opener", "/x/open/a");
+    }
+
+    //带正则的变量、段内混合通配交给PathPattern匹配
+    @Test
+    public void regexVariable() {
+        assertSame(patterns("/api/{id:\\d+}", "/static/*.html", "/user-{id}/info"),
+                "/api/1", "/api/42", "/api/x", "/api/1/", "/static/x.html", "/static/x.htm", "/static/", "/user-1/info", "/user-/info");
+    }
+
+    //末尾的 / 与 // 不做归一化,与spring的默认PathPatternParser一致
+    @Test
+    public void trailingSlash() {
+        assertSame(patterns("/a/b", "/c/d/", "/e/*"), "/a/b", "/a/b/", "/a//b", "/c/d", "/c/d/", "/e/", "/e/x", "/e/x/", "/e//");
+    }
+
+    //普通段与解码、去掉矩阵参数后的段比较
+    @Test
+    public void encodedSegment() {
+        assertSame(patterns("/api/a", "/a b/c", "/A"), "/api/%61", "/api/a;m=1", "/api/%41", "/a%20b/c", "/%41", "/a", "/api/a%2Fb");
+        SecurityPermitUrlMatcher matcher = new SecurityPermitUrlMatcher("/api/a", "/a b/c");
+        assertTrue(matches(matcher, "/api/%61"));
+        assertTrue(matches(matcher, "/a%20b/c"));
+        assertFalse(matches(matcher, "/api/%41"));
+    }
+
+    //不以 / 开头的放行路径先补上 /
+    @Test
+    public void missingLeadingSlash() {
+        assertSame(patterns("api/a", "b/**"), "/api/a", "/b", "/b/c");
+    }
+
+    //随机生成的放行路径组合与请求路径
+    @Test
+    public void randomizedAgainstPathPattern() {
+        Random random = new Random(20261019);
+        int checked = 0;
+        while (checked < 20000) {
+            String[] patterns = new String[1 + random.nextInt(5)];
+            for (int i = 0; i < patterns.length; i++) patterns[i] = path(random, PATTERN_SEGMENTS, random.nextInt(20) != 0);
+            ServerWebExchangeMatcher expected;
+            try {
+                expected = reference(patterns);
+            } catch (PatternParseException e) {
+                assertThrows(PatternParseException.class, () -> new SecurityPermitUrlMatcher(patterns), Arrays.toString(patterns));
+                continue;
+            }
+            ServerWebExchangeMatcher actual = new SecurityPermitUrlMatcher(patterns);
+            for (int j = 0; j < 20; j++, checked++) {
+                String path = path(random, PATH_SEGMENTS, true);
+                assertEquals(matches(expected, path), matches(actual, path), Arrays.toString(patterns) + " " + path);
+            }
+        }
+    }
+
+    private static String[] patterns(String... patterns) {
+        return patterns;
+    }
+
+    private static void assertSame(String[] patterns, String... paths) {
+        ServerWebExchangeMatcher expected = reference(patterns);
+        ServerWebExchangeMatcher actual = new SecurityPermitUrlMatcher(patterns);
+        for (String path : paths) {
+            assertEquals(matches(expected, path), matches(actual, path), Arrays.toString(patterns) + " " + path);
+        }
+    }
+
+    private static ServerWebExchangeMatcher reference(String... patterns) {
+        List<ServerWebExchangeMatcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) matchers.add(new PathPatternParserServerWebExchangeMatcher(pattern));
+        return new OrServerWebExchangeMatcher(matchers);
+    }
+
+    private static boolean matches(ServerWebExchangeMatcher matcher, String path) {
+        //使用URI而不是路径模板,保留 // 和已编码的段
+        ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.method(HttpMethod.GET, URI.create("http://localhost" + path)));
+        return matcher.matches(exchange).block().isMatch();
+    }
+
+    //随机段数,偶尔出现 // 或以 / 结尾;放行路径偶尔缺少开头的 /
+    private static String path(Random random, String[] segments, boolean leadingSlash) {
+        StringBuilder path = new StringBuilder();
+        if (leadingSlash) path.append('/');
+        int size = random.nextInt(5);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                path.append('/');
+                if (random.nextInt(15) == 0) path.append('/');
+            }
+            path.append(segments[random.nextInt(segments.length)]);
+        }
+        if (random.nextInt(8) == 0) path.append('/');
+        return path.length() == 0 ? "/" : path.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package org.lambda.framework.web.adapter;
 
 import lombok.extern.slf4j.Slf4j;
+import org.lambda.framework.common.exception.StacklessEventException;
 import org.lambda.framework.common.exception.basic.GlobalException;
 import org.lambda.framework.common.templete.ResponseTemplete;
 import org.lambda.framework.common.util.sample.JsonUtil;
@@ -38,6 +39,11 @@ public class WebGlobalExceptionHandler implements ErrorWebExceptionHandler {
     }
 
     private ResponseTemplete handleTransferException(Throwable e) {
+        //可预期的业务拒绝没有栈信息,只记录错误码
+        if(e instanceof StacklessEventException){
+            logger.warn("GlobalExceptionHandle {} {}",((StacklessEventException)e).getCode(),e.getMessage());
+            return result(((StacklessEventException)e).getCode(),e.getMessage());
+        }
         logger.error("GlobalExceptionHandle",e);
         if(e instanceof GlobalException){
             return result(((GlobalException)e).getCode(),e.getMessage());
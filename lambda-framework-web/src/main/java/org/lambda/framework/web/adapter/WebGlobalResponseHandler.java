@@ -5,7 +5,10 @@ import org.lambda.framework.common.templete.ResponseTemplete;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.MethodParameter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.reactive.HandlerResult;
 import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
 import org.springframework.web.reactive.result.method.annotation.ResponseBodyResultHandler;
@@ -13,6 +16,8 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import static org.lambda.framework.web.enums.GlobalResponseContentType.APPLICATION_JSON_UTF8;
+import static org.lambda.framework.web.enums.GlobalResponseContentType.APPLICATION_NDJSON_UTF8;
 import static org.lambda.framework.web.enums.WebExceptionEnum.ES_WEB_001;
 import static org.lambda.framework.web.enums.WebExceptionEnum.ES_WEB_002;
 
@@ -23,13 +28,20 @@ public class WebGlobalResponseHandler  {
     private static Mono<ResponseTemplete> methodForParams() {
         return Mono.empty();
     }
+    private static Flux<Object> methodForStreamParams() {
+        return Flux.empty();
+    }
     private static MethodParameter METHOD_PARAMETER;
 
+    private static MethodParameter STREAM_METHOD_PARAMETER;
+
     static {
         try {
             // 获得 METHOD_PARAMETER 。其中 -1 表示 `#methodForParams()` 方法的返回值
             METHOD_PARAMETER = new MethodParameter(
                     WebGlobalResponseHandler.class.getDeclaredMethod("methodForParams"), -1);
+            STREAM_METHOD_PARAMETER = new MethodParameter(
+                    WebGlobalResponseHandler.class.getDeclaredMethod("methodForStreamParams"), -1);
         } catch (NoSuchMethodException e) {
             throw new EventException(ES_WEB_001);
         }
@@ -47,18 +59,33 @@ public class WebGlobalResponseHandler  {
             public Mono<Void> handleResult(ServerWebExchange exchange, HandlerResult result) {
                 Object returnValue = result.getReturnValue();
                 Object body;
+                // <1.0> 返回DataBuffer流时已经是完整的响应体,如树的流式输出,直接写出不再包装
+                if (returnValue instanceof Flux && dataBuffer(result)) {
+                    if (exchange.getResponse().getHeaders().getContentType() == null) {
+                        exchange.getResponse().getHeaders().setContentType(APPLICATION_JSON_UTF8);
+                    }
+                    return exchange.getResponse().writeWith((Flux<DataBuffer>) returnValue);
+                }
+                // <1.0.1> SSE逐条推送,不能汇总
+                if (returnValue instanceof Flux && serverSentEvent(result)) {
+                    return writeBody(returnValue, result.getReturnTypeSource(), exchange);
+                }
                 // <1.1>  处理返回结果为 Mono 的情况
                 if (returnValue instanceof Mono) {
                     body = ((Mono<Object>) result.getReturnValue())
                             .map(e-> new ResponseTemplete(e))
                             .defaultIfEmpty(new ResponseTemplete());
-                    //  <1.2> 处理返回结果为 Flux 的情况
+                    //  <1.2> 客户端接受NDJSON时,Flux逐条写出,不在内存中汇总
+                } else if (returnValue instanceof Flux && acceptNdjson(exchange)) {
+                    exchange.getResponse().getHeaders().setContentType(APPLICATION_NDJSON_UTF8);
+                    return writeBody(returnValue, STREAM_METHOD_PARAMETER, exchange);
+                    //  <1.3> 处理返回结果为 Flux 的情况
                 } else if (returnValue instanceof Flux) {
                     body = ((Flux<Object>) result.getReturnValue())
                             .collectList()
                             .map(e-> new ResponseTemplete(e))
                             .defaultIfEmpty(new ResponseTemplete());
-                    //  <1.3> 处理结果为其它类型
+                    //  <1.4> 处理结果为其它类型
                 } else {
                     //不允许其他类型返回
                     //throw new EventException(ES_WEB_002);
@@ -68,4 +95,21 @@ public class WebGlobalResponseHandler  {
             }
         };
     }
+
+    private static boolean dataBuffer(HandlerResult result) {
+        Class<?> element = result.getReturnType().getGeneric(0).resolve();
+        return element != null && DataBuffer.class.isAssignableFrom(element);
+    }
+
+    private static boolean serverSentEvent(HandlerResult result) {
+        Class<?> element = result.getReturnType().getGeneric(0).resolve();
+        return element != null && ServerSentEvent.class.isAssignableFrom(element);
+    }
+
+    private static boolean acceptNdjson(ServerWebExchange exchange) {
+        for (MediaType mediaType : exchange.getRequest().getHeaders().getAccept()) {
+            if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(mediaType)) return true;
+        }
+        return false;
+    }
 }
\ No newline at end of file
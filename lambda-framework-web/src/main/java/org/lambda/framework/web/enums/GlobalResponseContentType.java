@@ -7,4 +7,6 @@ import java.nio.charset.StandardCharsets;
 public class GlobalResponseContentType {
     public static MediaType APPLICATION_JSON_UTF8 = new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8);
 
+    public static MediaType APPLICATION_NDJSON_UTF8 = new MediaType(MediaType.APPLICATION_NDJSON, StandardCharsets.UTF_8);
+
 }